@@ -0,0 +1,273 @@
+package com.cerner.devcon.actor;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import scala.concurrent.duration.FiniteDuration;
+import akka.actor.ActorRef;
+import akka.actor.Cancellable;
+import akka.actor.Props;
+import akka.actor.UntypedActor;
+import akka.event.Logging;
+import akka.event.LoggingAdapter;
+import akka.japi.Creator;
+
+/**
+ * Sits in front of one {@link BankAccount} and coalesces the Withdraw and
+ * Deposit messages sent to it into {@link BankAccount.Batch} messages.
+ *
+ * A batch is sent when it holds maxBatch operations, or when window has
+ * passed since its first operation, whichever comes first. The single
+ * {@link BankAccount.BatchResult} is split back into one reply per
+ * operation, the same reply the account would have sent, so clients can ask
+ * the batcher exactly as they would ask the account.
+ *
+ * A batch the account has not answered within the timeout is dropped by a
+ * periodic tick, as in {@link TransferCoordinator}, and logged with its
+ * outcome unknown; its clients are not answered and their asks time out.
+ */
+public class AccountBatcher extends UntypedActor {
+
+	LoggingAdapter log = Logging.getLogger(getContext().system(), this);
+
+	private static final Object REAP = new Object();
+
+	private final ActorRef account;
+	private final int maxBatch;
+	private final FiniteDuration window;
+	private final FiniteDuration timeout;
+
+	// operations waiting for the next batch, the arrays reused for each
+	private final boolean[] withdrawals;
+	private final long[] amounts;
+	private final long[] clientIds;
+	private final ActorRef[] clients;
+	private int size;
+
+	// the batch being filled, so a flush timer of an earlier one is ignored
+	private long generation;
+
+	private Cancellable timer;
+
+	private Cancellable reaper;
+
+	private long nextId;
+
+	/**
+	 * Batches sent and not yet answered, by the id of their first operation
+	 */
+	private final Map<Long, Pending> pending = new HashMap<Long, Pending>();
+
+	public AccountBatcher(ActorRef account, int maxBatch,
+			FiniteDuration window, FiniteDuration timeout) {
+		if (maxBatch < 1) {
+			throw new IllegalArgumentException("max batch " + maxBatch);
+		}
+		this.account = account;
+		this.maxBatch = maxBatch;
+		this.window = window;
+		this.timeout = timeout;
+		withdrawals = new boolean[maxBatch];
+		amounts = new long[maxBatch];
+		clientIds = new long[maxBatch];
+		clients = new ActorRef[maxBatch];
+	}
+
+	@Override
+	public void preStart() {
+		// a batch is dropped between one and one and a half timeouts
+		FiniteDuration interval = timeout.div(2);
+		reaper = getContext()
+				.system()
+				.scheduler()
+				.schedule(interval, interval, getSelf(), REAP,
+						getContext().dispatcher(), null);
+	}
+
+	@Override
+	public void onReceive(Object msg) throws Exception {
+		if (msg instanceof BankAccount.Withdraw) {
+			BankAccount.Withdraw withdraw = (BankAccount.Withdraw) msg;
+			add(true, withdraw.getAmount(), withdraw.getId());
+		} else if (msg instanceof BankAccount.Deposit) {
+			BankAccount.Deposit deposit = (BankAccount.Deposit) msg;
+			add(false, deposit.getAmount(), deposit.getId());
+		} else if (msg instanceof Flush) {
+			if (((Flush) msg).generation == generation) {
+				timer = null;
+				flush();
+			}
+		} else if (msg instanceof BankAccount.BatchResult) {
+			BankAccount.BatchResult result = (BankAccount.BatchResult) msg;
+			Pending batch = pending.remove(result.getId(0));
+			if (batch == null) {
+				log.warning("result for unknown batch {}", result.getId(0));
+				return;
+			}
+			for (int i = 0; i < result.size(); i++) {
+				batch.clients[i].tell(
+						BankAccount.reply(batch.clientIds[i],
+								result.getStatus(i)), getSelf());
+			}
+		} else if (msg instanceof BankAccount.BalanceRequest) {
+			// send what is buffered first so the balance includes it
+			flush();
+			account.forward(msg, getContext());
+		} else if (msg == REAP) {
+			reap();
+		} else {
+			unhandled(msg);
+		}
+	}
+
+	@Override
+	public void postStop() {
+		if (timer != null) {
+			timer.cancel();
+		}
+		reaper.cancel();
+	}
+
+	private void add(boolean withdraw, long amount, long clientId) {
+		withdrawals[size] = withdraw;
+		amounts[size] = amount;
+		clientIds[size] = clientId;
+		clients[size] = getSender();
+		size++;
+		if (size == maxBatch) {
+			flush();
+		} else if (size == 1) {
+			timer = getContext()
+					.system()
+					.scheduler()
+					.scheduleOnce(window, getSelf(), new Flush(generation),
+							getContext().dispatcher(), null);
+		}
+	}
+
+	private void flush() {
+		if (size == 0) {
+			return;
+		}
+		if (timer != null) {
+			timer.cancel();
+			timer = null;
+		}
+		long[] ids = new long[size];
+		for (int i = 0; i < size; i++) {
+			ids[i] = nextId++;
+		}
+		pending.put(ids[0], new Pending(Arrays.copyOf(clientIds, size),
+				Arrays.copyOf(clients, size), System.nanoTime()
+						+ timeout.toNanos()));
+		if (log.isDebugEnabled()) {
+			log.debug("sending batch of {}", size);
+		}
+		account.tell(
+				new BankAccount.Batch(Arrays.copyOf(withdrawals, size), Arrays
+						.copyOf(amounts, size), ids), getSelf());
+		reset();
+	}
+
+	/**
+	 * Start the next batch in the same arrays; flush has copied out what it
+	 * sends.
+	 */
+	private void reset() {
+		Arrays.fill(clients, 0, size, null);
+		size = 0;
+		generation++;
+	}
+
+	/**
+	 * Drop the batches past their deadline. The account may still have
+	 * applied them, so their clients are not answered either way.
+	 */
+	private void reap() {
+		long now = System.nanoTime();
+		Iterator<Pending> i = pending.values().iterator();
+		while (i.hasNext()) {
+			Pending batch = i.next();
+			if (now - batch.deadline > 0) {
+				log.error("batch of {} never answered, outcome unknown",
+						batch.clients.length);
+				i.remove();
+			}
+		}
+	}
+
+	/**
+	 * Timer message to send the batch of the given generation.
+	 */
+	private static final class Flush {
+		final long generation;
+
+		Flush(long generation) {
+			this.generation = generation;
+		}
+	}
+
+	/**
+	 * Who to answer for each operation of a batch in flight.
+	 */
+	private static class Pending {
+		final long[] clientIds;
+		final ActorRef[] clients;
+		final long deadline;
+
+		Pending(long[] clientIds, ActorRef[] clients, long deadline) {
+			this.clientIds = clientIds;
+			this.clients = clients;
+			this.deadline = deadline;
+		}
+	}
+
+	/**
+	 * @param account
+	 *            the BankAccount the batches are sent to
+	 * @param maxBatch
+	 *            most operations in one batch
+	 * @param window
+	 *            longest an operation waits for its batch to fill up
+	 */
+	public static Props props(final ActorRef account, final int maxBatch,
+			final FiniteDuration window) {
+		return props(account, maxBatch, window, BankTransfer.DEFAULT_TIMEOUT);
+	}
+
+	/**
+	 * @param timeout
+	 *            longest a batch waits for the account's result
+	 */
+	public static Props props(final ActorRef account, final int maxBatch,
+			final FiniteDuration window, final FiniteDuration timeout) {
+		return Props.create(new AccountBatcherCreator(account, maxBatch,
+				window, timeout));
+	}
+
+	public static class AccountBatcherCreator implements
+			Creator<AccountBatcher> {
+		private static final long serialVersionUID = 1L;
+		private ActorRef account;
+		private int maxBatch;
+		private FiniteDuration window;
+		private FiniteDuration timeout;
+
+		public AccountBatcherCreator(final ActorRef account,
+				final int maxBatch, final FiniteDuration window,
+				final FiniteDuration timeout) {
+			this.account = account;
+			this.maxBatch = maxBatch;
+			this.window = window;
+			this.timeout = timeout;
+		}
+
+		@Override
+		public AccountBatcher create() throws Exception {
+			return new AccountBatcher(account, maxBatch, window, timeout);
+		}
+	}
+
+}
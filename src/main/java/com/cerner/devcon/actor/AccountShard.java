@@ -0,0 +1,200 @@
+package com.cerner.devcon.actor;
+
+import java.util.Arrays;
+
+import akka.actor.Props;
+import akka.actor.UntypedActor;
+import akka.event.Logging;
+import akka.event.LoggingAdapter;
+import akka.routing.ConsistentHashingPool;
+
+/**
+ * Actor owning the balances of many accounts, so that millions of accounts
+ * do not need millions of actors.
+ *
+ * Clients send {@link Envelope}s to the gateway from {@link #gateway(int)},
+ * a consistent hashing pool that always routes the same account number to
+ * the same shard. The shard keeps its balances in an open addressing map
+ * from account number to a primitive long. An account is opened by its first
+ * deposit; a withdrawal from an account the shard has not seen fails.
+ *
+ * The messages inside the envelope and the replies are those of
+ * {@link BankAccount}; failed operations are answered with FAILED.
+ */
+public class AccountShard extends UntypedActor {
+
+	LoggingAdapter log = Logging.getLogger(getContext().system(), this);
+
+	private static final int EMPTY = -1;
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	// open addressing with linear probing, account numbers are never negative
+	private int[] keys;
+	private long[] balances;
+	private int size;
+
+	public AccountShard() {
+		keys = new int[INITIAL_CAPACITY];
+		balances = new long[INITIAL_CAPACITY];
+		Arrays.fill(keys, EMPTY);
+	}
+
+	@Override
+	public void onReceive(Object msg) throws Exception {
+		if (msg instanceof Envelope) {
+			Envelope envelope = (Envelope) msg;
+			int accountNumber = envelope.getAccountNumber();
+			Object op = envelope.getMessage();
+			if (op instanceof BankAccount.Withdraw) {
+				BankAccount.Withdraw withdraw = (BankAccount.Withdraw) op;
+				boolean done = withdraw(accountNumber, withdraw.getAmount());
+				log.debug("sending bank withdraw result");
+				sender().tell(
+						BankAccount.reply(withdraw.getId(),
+								BankAccount.status(done)), getSelf());
+			} else if (op instanceof BankAccount.Deposit) {
+				BankAccount.Deposit deposit = (BankAccount.Deposit) op;
+				boolean done = deposit(accountNumber, deposit.getAmount());
+				log.debug("sending bank deposit result");
+				sender().tell(
+						BankAccount.reply(deposit.getId(),
+								BankAccount.status(done)), getSelf());
+			} else if (op instanceof BankAccount.BalanceRequest) {
+				log.debug("sending balance");
+				int slot = find(accountNumber);
+				sender().tell(
+						new BankAccount.Balance(slot < 0 ? 0 : balances[slot],
+								((BankAccount.BalanceRequest) op).getId()),
+						getSelf());
+			} else {
+				unhandled(msg);
+			}
+		} else {
+			unhandled(msg);
+		}
+	}
+
+	private boolean withdraw(int accountNumber, long amount) {
+		int slot = find(accountNumber);
+		if (slot < 0 || amount < 0 || amount > balances[slot]) {
+			return false;
+		}
+		balances[slot] -= amount;
+		return true;
+	}
+
+	private boolean deposit(int accountNumber, long amount) {
+		if (amount < 0) {
+			return false;
+		}
+		int slot = find(accountNumber);
+		if (slot < 0) {
+			slot = insert(accountNumber);
+		}
+		balances[slot] += amount;
+		return true;
+	}
+
+	private int find(int accountNumber) {
+		int mask = keys.length - 1;
+		for (int i = hash(accountNumber) & mask;; i = (i + 1) & mask) {
+			if (keys[i] == accountNumber) {
+				return i;
+			} else if (keys[i] == EMPTY) {
+				return -1;
+			}
+		}
+	}
+
+	private int insert(int accountNumber) {
+		// keep the table at most half full
+		if (size * 2 >= keys.length) {
+			grow();
+		}
+		int mask = keys.length - 1;
+		int i = hash(accountNumber) & mask;
+		while (keys[i] != EMPTY) {
+			i = (i + 1) & mask;
+		}
+		keys[i] = accountNumber;
+		size++;
+		return i;
+	}
+
+	private void grow() {
+		int[] oldKeys = keys;
+		long[] oldBalances = balances;
+		keys = new int[oldKeys.length * 2];
+		balances = new long[oldKeys.length * 2];
+		Arrays.fill(keys, EMPTY);
+		size = 0;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY) {
+				balances[insert(oldKeys[i])] = oldBalances[i];
+			}
+		}
+	}
+
+	private static int hash(int accountNumber) {
+		// spread sequential account numbers over the table, then fold the
+		// high bits into the low ones the mask keeps, as LongMap does
+		int h = accountNumber * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * A BankAccount message for the account with the given number. The
+	 * gateway hashes it by the account number.
+	 */
+	public static final class Envelope {
+		private final int accountNumber;
+		private final Object message;
+
+		public Envelope(int accountNumber, Object message) {
+			if (accountNumber < 0) {
+				throw new IllegalArgumentException("account number "
+						+ accountNumber);
+			}
+			this.accountNumber = accountNumber;
+			this.message = message;
+		}
+
+		public int getAccountNumber() {
+			return accountNumber;
+		}
+
+		public Object getMessage() {
+			return message;
+		}
+	}
+
+	public static Props props() {
+		return Props.create(AccountShard.class);
+	}
+
+	/**
+	 * Gateway routing each {@link Envelope} to one of shards shards by
+	 * consistent hashing on the account number.
+	 */
+	// the mapper interface is nested in the deprecated ConsistentHashingRouter
+	@SuppressWarnings("deprecation")
+	public static Props gateway(int shards) {
+		return new ConsistentHashingPool(shards).withHashMapper(
+				new akka.routing.ConsistentHashingRouter.ConsistentHashMapper() {
+					@Override
+					public Object hashKey(Object message) {
+						return message instanceof Envelope ? ((Envelope) message)
+								.getAccountNumber() : null;
+					}
+				}).props(props());
+	}
+
+	/**
+	 * Gateway with one shard per available processor.
+	 */
+	public static Props gateway() {
+		return gateway(Runtime.getRuntime().availableProcessors());
+	}
+
+}
@@ -14,20 +14,24 @@ public class BankAccount extends UntypedActor {
 
 	LoggingAdapter log = Logging.getLogger(getContext().system(), this);
 
-	public BankAccount(int accountNumber, double balance) {
+	public BankAccount(int accountNumber, long balance) {
 		this.accountNumber = accountNumber;
 		this.accountBalance = balance;
 	}
 
 	private int accountNumber;
 
-	private double accountBalance;
+	private long accountBalance;
 
 	// to withdraw funds from the account
-	private boolean withdraw(double amount) {
-		double newAccountBalance;
+	private boolean withdraw(long amount) {
+		long newAccountBalance;
 
-		if (amount > accountBalance) {
+		if (amount < 0) {
+			return false; // can not withdraw a negative amount
+		}
+
+		else if (amount > accountBalance) {
 			// there are not enough funds in the account
 			return false;
 		}
@@ -41,10 +45,10 @@ public class BankAccount extends UntypedActor {
 
 	}
 
-	private boolean deposit(double amount) {
-		double newAccountBalance;
+	private boolean deposit(long amount) {
+		long newAccountBalance;
 
-		if (amount < 0.0) {
+		if (amount < 0) {
 			return false; // can not deposit a negative amount
 		}
 
@@ -65,65 +69,333 @@ public class BankAccount extends UntypedActor {
 	public void onReceive(Object msg) throws Exception {
 		// Check the message type to select behavior
 		if (msg instanceof Withdraw) {
-			withdraw(((Withdraw) msg).getAmount());
-			log.debug("sending bank withdraw done");
-			// respond async with successful response
-			sender().tell(TransactionStatus.DONE, getSelf());
+			Withdraw withdraw = (Withdraw) msg;
+			boolean done = withdraw(withdraw.getAmount());
+			if (log.isDebugEnabled()) {
+				log.debug("sending bank withdraw result");
+			}
+			// respond async with the result
+			sender().tell(reply(withdraw.getId(), status(done)), getSelf());
 		} else if (msg instanceof Deposit) {
-			deposit(((Deposit) msg).getAmount());
-			log.debug("sending bank deposit done");
-			// respond async with successful response
-			sender().tell(TransactionStatus.DONE, getSelf());
+			Deposit deposit = (Deposit) msg;
+			boolean done = deposit(deposit.getAmount());
+			if (log.isDebugEnabled()) {
+				log.debug("sending bank deposit result");
+			}
+			// respond async with the result
+			sender().tell(reply(deposit.getId(), status(done)), getSelf());
+		} else if (msg instanceof Batch) {
+			Batch batch = (Batch) msg;
+			boolean[] done = new boolean[batch.size()];
+			for (int i = 0; i < done.length; i++) {
+				done[i] = batch.isWithdraw(i) ? withdraw(batch.getAmount(i))
+						: deposit(batch.getAmount(i));
+			}
+			if (log.isDebugEnabled()) {
+				log.debug("sending batch result");
+			}
+			// one reply for the whole batch
+			sender().tell(new BatchResult(batch.ids, done, accountBalance),
+					getSelf());
 		} else if (msg instanceof BalanceRequest) {
-			log.debug("sending balance");
+			if (log.isDebugEnabled()) {
+				log.debug("sending balance");
+			}
 			// respond async with successful response
-			sender().tell(this.accountBalance, getSelf());
+			sender().tell(
+					new Balance(accountBalance, ((BalanceRequest) msg).getId()),
+					getSelf());
 		}
 
 	}
 
+	/**
+	 * Asks for the account's balance. Without a correlation id it holds no
+	 * state, so the shared {@link #BALANCE_REQUEST} can be sent instead of a
+	 * new one each time.
+	 */
 	public static class BalanceRequest {
+		private final long id;
+
+		public BalanceRequest() {
+			this(NO_ID);
+		}
+
+		/**
+		 * @param id
+		 *            correlation id, echoed back in the Balance
+		 */
+		public BalanceRequest(long id) {
+			this.id = id;
+		}
+
+		public long getId() {
+			return id;
+		}
+	}
+
+	public static final BalanceRequest BALANCE_REQUEST = new BalanceRequest();
+
+	/**
+	 * Withdraws and deposits without a correlation id for amounts 0 to
+	 * CACHED_AMOUNTS - 1 are shared instances; see Withdraw.of and
+	 * Deposit.of.
+	 */
+	public static final int CACHED_AMOUNTS = 1024;
+
+	private static final Withdraw[] WITHDRAWALS = new Withdraw[CACHED_AMOUNTS];
+	private static final Deposit[] DEPOSITS = new Deposit[CACHED_AMOUNTS];
+	static {
+		for (int i = 0; i < CACHED_AMOUNTS; i++) {
+			WITHDRAWALS[i] = new Withdraw(i);
+			DEPOSITS[i] = new Deposit(i);
+		}
+	}
+
+	/**
+	 * Reply to a BalanceRequest. Carries the balance in minor units as a
+	 * primitive so the reply is exact and nothing is boxed.
+	 */
+	public static final class Balance {
+		private final long amount;
+		private final long id;
+
+		public Balance(long amount) {
+			this(amount, NO_ID);
+		}
 
+		/**
+		 * @param id
+		 *            correlation id of the BalanceRequest
+		 */
+		public Balance(long amount, long id) {
+			this.amount = amount;
+			this.id = id;
+		}
+
+		public long getAmount() {
+			return amount;
+		}
+
+		public long getId() {
+			return id;
+		}
 	}
 
 	public static class Withdraw {
-		private double amount;
+		private final long amount;
+		private final long id;
 
-		public Withdraw(double amount) {
+		public Withdraw(long amount) {
+			this(amount, NO_ID);
+		}
+
+		/**
+		 * A Withdraw without a correlation id, shared for small amounts.
+		 */
+		public static Withdraw of(long amount) {
+			return amount >= 0 && amount < CACHED_AMOUNTS ? WITHDRAWALS[(int) amount]
+					: new Withdraw(amount);
+		}
+
+		/**
+		 * @param id
+		 *            correlation id, echoed back in a TransactionResult
+		 */
+		public Withdraw(long amount, long id) {
 			this.amount = amount;
+			this.id = id;
 		}
 
-		public double getAmount() {
+		public long getAmount() {
 			return amount;
 		}
+
+		public long getId() {
+			return id;
+		}
 	}
 
 	public static class Deposit {
-		private double amount;
+		private final long amount;
+		private final long id;
 
-		public Deposit(double amount) {
+		public Deposit(long amount) {
+			this(amount, NO_ID);
+		}
+
+		/**
+		 * A Deposit without a correlation id, shared for small amounts.
+		 */
+		public static Deposit of(long amount) {
+			return amount >= 0 && amount < CACHED_AMOUNTS ? DEPOSITS[(int) amount]
+					: new Deposit(amount);
+		}
+
+		/**
+		 * @param id
+		 *            correlation id, echoed back in a TransactionResult
+		 */
+		public Deposit(long amount, long id) {
 			this.amount = amount;
+			this.id = id;
 		}
 
-		public double getAmount() {
+		public long getAmount() {
 			return amount;
 		}
+
+		public long getId() {
+			return id;
+		}
 	}
 
 	public static enum TransactionStatus {
 		DONE, FAILED;
 	}
 
-	public static Props props(final int accountNumber, final double balance) {
+	/**
+	 * Id of a Withdraw or Deposit sent without a correlation id. These are
+	 * answered with a bare TransactionStatus.
+	 */
+	public static final long NO_ID = -1;
+
+	/**
+	 * Reply to a Withdraw or Deposit that carried a correlation id, so a
+	 * client with many operations in flight can tell the replies apart.
+	 */
+	public static final class TransactionResult {
+		private final long id;
+		private final TransactionStatus status;
+
+		public TransactionResult(long id, TransactionStatus status) {
+			this.id = id;
+			this.status = status;
+		}
+
+		public long getId() {
+			return id;
+		}
+
+		public TransactionStatus getStatus() {
+			return status;
+		}
+	}
+
+	/**
+	 * Many withdrawals and deposits in one message, applied in order in a
+	 * single onReceive and answered with a single {@link BatchResult}.
+	 *
+	 * The operations are held in parallel primitive arrays. The arrays are
+	 * owned by the message once it is created and must not be changed.
+	 */
+	public static final class Batch {
+		private final boolean[] withdrawals;
+		private final long[] amounts;
+		private final long[] ids;
+
+		/**
+		 * @param withdrawals
+		 *            true for a withdrawal, false for a deposit
+		 * @param amounts
+		 *            amount of each operation
+		 * @param ids
+		 *            correlation id of each operation
+		 */
+		public Batch(boolean[] withdrawals, long[] amounts, long[] ids) {
+			if (withdrawals.length != amounts.length
+					|| amounts.length != ids.length) {
+				throw new IllegalArgumentException("batch arrays differ in length");
+			}
+			this.withdrawals = withdrawals;
+			this.amounts = amounts;
+			this.ids = ids;
+		}
+
+		public int size() {
+			return amounts.length;
+		}
+
+		public boolean isWithdraw(int i) {
+			return withdrawals[i];
+		}
+
+		public long getAmount(int i) {
+			return amounts[i];
+		}
+
+		public long getId(int i) {
+			return ids[i];
+		}
+	}
+
+	/**
+	 * Reply to a {@link Batch}: whether each operation succeeded, in batch
+	 * order, and the balance after the whole batch.
+	 */
+	public static final class BatchResult {
+		private final long[] ids;
+		private final boolean[] done;
+		private final long balance;
+
+		public BatchResult(long[] ids, boolean[] done, long balance) {
+			this.ids = ids;
+			this.done = done;
+			this.balance = balance;
+		}
+
+		public int size() {
+			return ids.length;
+		}
+
+		public long getId(int i) {
+			return ids[i];
+		}
+
+		public TransactionStatus getStatus(int i) {
+			return done[i] ? TransactionStatus.DONE : TransactionStatus.FAILED;
+		}
+
+		public long getBalance() {
+			return balance;
+		}
+	}
+
+	/**
+	 * The reply for an operation with the given correlation id.
+	 */
+	static Object reply(long id, TransactionStatus status) {
+		return id == NO_ID ? status : new TransactionResult(id, status);
+	}
+
+	static TransactionStatus status(boolean done) {
+		return done ? TransactionStatus.DONE : TransactionStatus.FAILED;
+	}
+
+	/**
+	 * Config path of the bounded mailbox for account actors.
+	 */
+	public static final String BOUNDED_MAILBOX = "devcon.bank.account-mailbox";
+
+	public static Props props(final int accountNumber, final long balance) {
 		return Props.create(new BankAccountCreator(accountNumber, balance));
 	}
 
+	/**
+	 * Props for an account with the bounded mailbox from application.conf, so
+	 * a burst of messages blocks its senders instead of growing the mailbox
+	 * without limit.
+	 */
+	public static Props boundedProps(final int accountNumber, final long balance) {
+		return props(accountNumber, balance).withMailbox(BOUNDED_MAILBOX);
+	}
+
 	public static class BankAccountCreator implements Creator<BankAccount> {
-		private final long serialVersionUID = 1L;
+		private static final long serialVersionUID = 1L;
 		private int accountNumber;
-		private double balance;
+		private long balance;
 
-		public BankAccountCreator(final int accountNumber, final double balance) {
+		public BankAccountCreator(final int accountNumber, final long balance) {
 			this.accountNumber = accountNumber;
 			this.balance = balance;
 		}
@@ -1,7 +1,12 @@
 package com.cerner.devcon.actor;
 
+import java.util.concurrent.TimeUnit;
+
+import scala.concurrent.duration.Duration;
+import scala.concurrent.duration.FiniteDuration;
 import akka.actor.ActorRef;
 import akka.actor.Props;
+import akka.actor.ReceiveTimeout;
 import akka.actor.UntypedActor;
 import akka.event.Logging;
 import akka.event.LoggingAdapter;
@@ -15,11 +20,42 @@ import akka.japi.Procedure;
  * It is designed as a finite state machine (FSM) which starts in a state that
  * is waiting for a transfer message and transitions through other states as it
  * completes the transaction.
+ *
+ * Each state waits at most timeout for its reply, using a ReceiveTimeout. A
+ * transfer that times out answers FAILED but keeps waiting, for
+ * LATE_REPLY_TIMEOUTS more timeouts, for the late reply: a withdraw done
+ * after all is refunded, as is a deposit that failed. If no reply comes the
+ * outcome is unknown and logged as an error, and the actor stops, so a
+ * stalled account can not leave transfer actors behind. If the deposit leg
+ * fails, the withdrawn amount is deposited back to the from account before
+ * answering FAILED.
  */
 public class BankTransfer extends UntypedActor {
 
 	LoggingAdapter log = Logging.getLogger(getContext().system(), this);
 
+	public static final FiniteDuration DEFAULT_TIMEOUT = Duration.create(5,
+			TimeUnit.SECONDS);
+
+	/**
+	 * Timeouts to wait for a late reply after a step timed out.
+	 */
+	static final int LATE_REPLY_TIMEOUTS = 10;
+
+	private final FiniteDuration timeout;
+
+	public BankTransfer() {
+		this(DEFAULT_TIMEOUT);
+	}
+
+	/**
+	 * @param timeout
+	 *            longest wait for each reply from an account
+	 */
+	public BankTransfer(FiniteDuration timeout) {
+		this.timeout = timeout;
+	}
+
 	/**
 	 * Handles just the Transfer message.
 	 * 
@@ -33,12 +69,13 @@ public class BankTransfer extends UntypedActor {
 			log.debug("received transfer message");
 			Transfer txfr = (Transfer) msg;
 			// Send an async msg to the from account to withdraw
-			txfr.from.tell(new BankAccount.Withdraw(txfr.getAmount()),
+			txfr.from.tell(BankAccount.Withdraw.of(txfr.getAmount()),
 					getSelf());
 			// Change the behavior of the actor to wait for the result of the
 			// withdrawal
+			getContext().setReceiveTimeout(timeout);
 			getContext().become(
-					new AwaitFrom(txfr.to, txfr.amount, getSender()));
+					new AwaitFrom(txfr.from, txfr.to, txfr.amount, getSender()));
 		}
 
 	}
@@ -49,12 +86,14 @@ public class BankTransfer extends UntypedActor {
 	 */
 	private class AwaitFrom implements Procedure<Object> {
 
+		private ActorRef from;
 		private ActorRef to;
-		private double amount;
+		private long amount;
 		private ActorRef customer;
 
-		public AwaitFrom(final ActorRef to, final double amount,
-				final ActorRef customer) {
+		public AwaitFrom(final ActorRef from, final ActorRef to,
+				final long amount, final ActorRef customer) {
+			this.from = from;
 			this.to = to;
 			this.amount = amount;
 			this.customer = customer;
@@ -67,8 +106,8 @@ public class BankTransfer extends UntypedActor {
 				switch (status) {
 				case DONE:
 					log.debug("received transfer withdraw done");
-					to.tell(new BankAccount.Deposit(amount), getSelf());
-					getContext().become(new AwaitTo(customer));
+					to.tell(BankAccount.Deposit.of(amount), getSelf());
+					getContext().become(new AwaitTo(from, amount, customer));
 					break;
 				case FAILED:
 					log.debug("received transfer withdraw failed");
@@ -76,6 +115,12 @@ public class BankTransfer extends UntypedActor {
 					getContext().stop(getSelf());
 					break;
 				}
+			} else if (msg instanceof ReceiveTimeout) {
+				// the transfer will not be done, but a late withdraw must be
+				// given back
+				log.warning("transfer withdraw of {} timed out", amount);
+				customer.tell(TransferStatus.FAILED, getSelf());
+				awaitLate(new AwaitLate(from, amount, true));
 			}
 		}
 
@@ -87,9 +132,14 @@ public class BankTransfer extends UntypedActor {
 	 */
 	private class AwaitTo implements Procedure<Object> {
 
+		private ActorRef from;
+		private long amount;
 		private ActorRef customer;
 
-		public AwaitTo(final ActorRef customer) {
+		public AwaitTo(final ActorRef from, final long amount,
+				final ActorRef customer) {
+			this.from = from;
+			this.amount = amount;
 			this.customer = customer;
 		}
 
@@ -104,28 +154,150 @@ public class BankTransfer extends UntypedActor {
 					getContext().stop(getSelf());
 					break;
 				case FAILED:
-					log.debug("received transfer deposit failed");
-					customer.tell(TransferStatus.FAILED, getSelf());
-					getContext().stop(getSelf());
+					// compensate by giving the amount back to the from
+					// account
+					log.debug("received transfer deposit failed, refunding");
+					from.tell(BankAccount.Deposit.of(amount), getSelf());
+					getContext().become(new AwaitRefund(from, amount, customer));
 					break;
 				}
+			} else if (msg instanceof ReceiveTimeout) {
+				// the deposit may still have been made, so refunding could
+				// create money; wait for its late reply instead
+				log.error("transfer deposit of {} timed out, outcome unknown",
+						amount);
+				customer.tell(TransferStatus.FAILED, getSelf());
+				awaitLate(new AwaitLate(from, amount, false));
 			}
 		}
 
 	};
 
+	private void awaitLate(AwaitLate late) {
+		getContext().setReceiveTimeout(timeout.mul(LATE_REPLY_TIMEOUTS));
+		getContext().become(late);
+	}
+
+	/**
+	 * Class that defines behavior of the actor after a withdraw or deposit
+	 * timed out and the customer was answered FAILED, while it waits for the
+	 * late reply.
+	 */
+	private class AwaitLate implements Procedure<Object> {
+
+		private ActorRef from;
+		private long amount;
+		private boolean withdrawing;
+
+		public AwaitLate(final ActorRef from, final long amount,
+				final boolean withdrawing) {
+			this.from = from;
+			this.amount = amount;
+			this.withdrawing = withdrawing;
+		}
+
+		@Override
+		public void apply(Object msg) {
+			if (msg instanceof BankAccount.TransactionStatus) {
+				boolean done = msg == BankAccount.TransactionStatus.DONE;
+				if (withdrawing == done) {
+					// a late withdraw, or a failed deposit, took the amount
+					// from the from account without a deposit
+					log.warning("late transfer {} of {}, refunding",
+							withdrawing ? "withdraw" : "deposit failure",
+							amount);
+					from.tell(BankAccount.Deposit.of(amount), getSelf());
+					getContext().become(new AwaitRefund(from, amount, null));
+				} else {
+					if (done) {
+						log.error("transfer of {} was done after it timed out",
+								amount);
+					}
+					getContext().stop(getSelf());
+				}
+			} else if (msg instanceof ReceiveTimeout) {
+				log.error("transfer {} of {} with {} never answered, outcome "
+						+ "unknown", withdrawing ? "withdraw" : "deposit",
+						amount, from);
+				getContext().stop(getSelf());
+			}
+		}
+
+	};
+
+	/**
+	 * Class that defines behavior of the actor while it is awaiting the
+	 * refund of a failed deposit from the From account. The customer is null
+	 * if it was already answered.
+	 */
+	private class AwaitRefund implements Procedure<Object> {
+
+		private ActorRef from;
+		private long amount;
+		private ActorRef customer;
+
+		public AwaitRefund(final ActorRef from, final long amount,
+				final ActorRef customer) {
+			this.from = from;
+			this.amount = amount;
+			this.customer = customer;
+		}
+
+		@Override
+		public void apply(Object msg) {
+			if (msg == BankAccount.TransactionStatus.DONE) {
+				log.debug("received transfer refund done");
+				answerFailed();
+			} else if (msg == BankAccount.TransactionStatus.FAILED
+					|| msg instanceof ReceiveTimeout) {
+				log.error("refund of {} to {} failed", amount, from);
+				answerFailed();
+			}
+		}
+
+		private void answerFailed() {
+			if (customer != null) {
+				customer.tell(TransferStatus.FAILED, getSelf());
+			}
+			getContext().stop(getSelf());
+		}
+
+	};
+
+	/**
+	 * @param timeout
+	 *            longest wait for each reply from an account
+	 */
+	public static Props props(final FiniteDuration timeout) {
+		return Props.create(new BankTransferCreator(timeout));
+	}
+
+	public static class BankTransferCreator implements Creator<BankTransfer> {
+		private static final long serialVersionUID = 1L;
+		private FiniteDuration timeout;
+
+		public BankTransferCreator(final FiniteDuration timeout) {
+			this.timeout = timeout;
+		}
+
+		@Override
+		public BankTransfer create() throws Exception {
+			return new BankTransfer(timeout);
+		}
+	}
+
 	public static class Transfer {
-		private double amount;
+		private long amount;
 		private ActorRef from;
 		private ActorRef to;
 
-		public Transfer(ActorRef from, ActorRef to, double amount) {
+		public Transfer(ActorRef from, ActorRef to, long amount) {
 			this.amount = amount;
 			this.from = from;
 			this.to = to;
 		}
 
-		public double getAmount() {
+		public long getAmount() {
 			return amount;
 		}
 
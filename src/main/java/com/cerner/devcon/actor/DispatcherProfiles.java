@@ -0,0 +1,59 @@
+package com.cerner.devcon.actor;
+
+import akka.actor.Props;
+import akka.actor.TypedProps;
+
+/**
+ * Names of the dispatcher profiles in application.conf, and helpers to run
+ * actors on them.
+ *
+ * The profiles are the pinned {@link #HOT_ACCOUNT}, the {@link #FIXED_POOL}
+ * and the {@link #THROUGHPUT_BATCH} dispatcher. Each kind of actor has its
+ * own dispatcher ({@link #ACCOUNTS}, {@link #COORDINATORS}, {@link #TYPED}),
+ * and {@link #TRANSFERS} runs the typed transfer service's futures. Each
+ * copies one of the profiles, so the profile is chosen in config without
+ * changing code.
+ */
+public final class DispatcherProfiles {
+
+	public static final String DEFAULT = "akka.actor.default-dispatcher";
+
+	public static final String HOT_ACCOUNT = "devcon.bank.dispatchers.hot-account";
+
+	public static final String FIXED_POOL = "devcon.bank.dispatchers.fixed-pool";
+
+	public static final String THROUGHPUT_BATCH = "devcon.bank.dispatchers.throughput-batch";
+
+	public static final String ACCOUNTS = "devcon.bank.dispatchers.accounts";
+
+	public static final String COORDINATORS = "devcon.bank.dispatchers.coordinators";
+
+	public static final String TYPED = "devcon.bank.dispatchers.typed";
+
+	public static final String TRANSFERS = "devcon.bank.dispatchers.transfers";
+
+	private DispatcherProfiles() {
+	}
+
+	/**
+	 * Run account actors on the accounts dispatcher.
+	 */
+	public static Props forAccounts(Props props) {
+		return props.withDispatcher(ACCOUNTS);
+	}
+
+	/**
+	 * Run transfer coordinators on the coordinators dispatcher.
+	 */
+	public static Props forCoordinators(Props props) {
+		return props.withDispatcher(COORDINATORS);
+	}
+
+	/**
+	 * Run typed actors on the typed dispatcher.
+	 */
+	public static <T> TypedProps<T> forTyped(TypedProps<T> props) {
+		return props.withDispatcher(TYPED);
+	}
+
+}
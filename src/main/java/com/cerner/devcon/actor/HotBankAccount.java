@@ -0,0 +1,107 @@
+package com.cerner.devcon.actor;
+
+import akka.actor.Props;
+import akka.actor.UntypedActor;
+import akka.event.Logging;
+import akka.event.LoggingAdapter;
+import akka.japi.Creator;
+
+import com.cerner.devcon.bank.DepositCells;
+
+/**
+ * BankAccount actor for accounts that take a lot of concurrent deposits.
+ *
+ * Clients holding the account's {@link DepositCells} deposit straight into
+ * them without sending a message, so deposits are not serialized through the
+ * mailbox. The actor folds the cells into its balance whenever it handles a
+ * Withdraw or BalanceRequest. Deposit messages are still accepted and go
+ * through the same cells.
+ *
+ * Replies with the same messages as {@link BankAccount}.
+ */
+public class HotBankAccount extends UntypedActor {
+
+	LoggingAdapter log = Logging.getLogger(getContext().system(), this);
+
+	public HotBankAccount(int accountNumber, long balance,
+			DepositCells deposits) {
+		this.accountNumber = accountNumber;
+		this.accountBalance = balance;
+		this.deposits = deposits;
+	}
+
+	private int accountNumber;
+
+	private long accountBalance;
+
+	private final DepositCells deposits;
+
+	// to withdraw funds from the account
+	private boolean withdraw(long amount) {
+		accountBalance += deposits.drain();
+		if (amount < 0 || amount > accountBalance) {
+			// there are not enough funds in the account
+			return false;
+		}
+		accountBalance -= amount;
+		return true;
+	}
+
+	@Override
+	public void onReceive(Object msg) throws Exception {
+		if (msg instanceof BankAccount.Withdraw) {
+			boolean done = withdraw(((BankAccount.Withdraw) msg).getAmount());
+			log.debug("sending bank withdraw result");
+			sender().tell(
+					BankAccount.reply(((BankAccount.Withdraw) msg).getId(),
+							BankAccount.status(done)), getSelf());
+		} else if (msg instanceof BankAccount.Deposit) {
+			long amount = ((BankAccount.Deposit) msg).getAmount();
+			if (amount >= 0) {
+				deposits.add(amount);
+			}
+			log.debug("sending bank deposit result");
+			sender().tell(
+					BankAccount.reply(((BankAccount.Deposit) msg).getId(),
+							BankAccount.status(amount >= 0)), getSelf());
+		} else if (msg instanceof BankAccount.BalanceRequest) {
+			accountBalance += deposits.drain();
+			log.debug("sending balance");
+			sender().tell(
+					new BankAccount.Balance(accountBalance,
+							((BankAccount.BalanceRequest) msg).getId()),
+					getSelf());
+		}
+	}
+
+	/**
+	 * @param deposits
+	 *            cells shared with the clients that deposit into the account
+	 */
+	public static Props props(final int accountNumber, final long balance,
+			final DepositCells deposits) {
+		return Props.create(new HotBankAccountCreator(accountNumber, balance,
+				deposits));
+	}
+
+	public static class HotBankAccountCreator implements
+			Creator<HotBankAccount> {
+		private static final long serialVersionUID = 1L;
+		private int accountNumber;
+		private long balance;
+		private DepositCells deposits;
+
+		public HotBankAccountCreator(final int accountNumber,
+				final long balance, final DepositCells deposits) {
+			this.accountNumber = accountNumber;
+			this.balance = balance;
+			this.deposits = deposits;
+		}
+
+		@Override
+		public HotBankAccount create() throws Exception {
+			return new HotBankAccount(accountNumber, balance, deposits);
+		}
+	}
+
+}
@@ -0,0 +1,75 @@
+package com.cerner.devcon.actor;
+
+import java.util.concurrent.Semaphore;
+
+import scala.concurrent.ExecutionContext;
+import scala.concurrent.Future;
+import akka.actor.ActorRef;
+import akka.dispatch.OnComplete;
+import akka.pattern.Patterns;
+import akka.util.Timeout;
+
+/**
+ * Client side flow control: asks an actor with at most maxInFlight asks
+ * outstanding at once.
+ *
+ * Each ask takes a permit, and the permit is given back when its reply (or
+ * timeout) arrives. A producer that gets ahead of the actor blocks in
+ * {@link #ask(Object)} until a reply frees a permit, instead of queueing
+ * messages without limit. Safe to share between producer threads.
+ */
+public class InFlightLimiter {
+
+	private final ActorRef target;
+	private final Timeout timeout;
+	private final ExecutionContext executor;
+	private final Semaphore permits;
+
+	private final OnComplete<Object> release = new OnComplete<Object>() {
+		@Override
+		public void onComplete(Throwable failure, Object result) {
+			permits.release();
+		}
+	};
+
+	/**
+	 * @param executor
+	 *            runs the callbacks that give back the permits, for example
+	 *            the actor system's dispatcher
+	 */
+	public InFlightLimiter(ActorRef target, int maxInFlight, Timeout timeout,
+			ExecutionContext executor) {
+		if (maxInFlight < 1) {
+			throw new IllegalArgumentException("max in flight " + maxInFlight);
+		}
+		this.target = target;
+		this.timeout = timeout;
+		this.executor = executor;
+		this.permits = new Semaphore(maxInFlight);
+	}
+
+	/**
+	 * Ask the target, first waiting for a free permit if maxInFlight asks
+	 * are outstanding.
+	 */
+	public Future<Object> ask(Object msg) throws InterruptedException {
+		permits.acquire();
+		Future<Object> future;
+		try {
+			future = Patterns.ask(target, msg, timeout);
+		} catch (RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+		future.onComplete(release, executor);
+		return future;
+	}
+
+	/**
+	 * Number of asks that can be sent right now without waiting.
+	 */
+	public int available() {
+		return permits.availablePermits();
+	}
+
+}
@@ -0,0 +1,98 @@
+package com.cerner.devcon.actor;
+
+import akka.actor.Props;
+import akka.actor.UntypedActor;
+import akka.event.Logging;
+import akka.event.LoggingAdapter;
+import akka.japi.Creator;
+
+import com.cerner.devcon.bank.BalanceStore;
+
+/**
+ * BankAccount actor that keeps its balance in a slot of a shared
+ * {@link BalanceStore} instead of a field, for example a
+ * {@link com.cerner.devcon.bank.MappedLedger} so the balance lives off heap
+ * and survives a restart.
+ *
+ * The actor is the only writer of its slot, so plain get and set are enough.
+ * Replies with the same messages as {@link BankAccount}.
+ */
+public class LedgerBankAccount extends UntypedActor {
+
+	LoggingAdapter log = Logging.getLogger(getContext().system(), this);
+
+	public LedgerBankAccount(int accountNumber, BalanceStore ledger) {
+		this.accountNumber = accountNumber;
+		this.ledger = ledger;
+	}
+
+	private final int accountNumber;
+
+	private final BalanceStore ledger;
+
+	// to withdraw funds from the account
+	private boolean withdraw(long amount) {
+		long balance = ledger.get(accountNumber);
+		if (amount < 0 || amount > balance) {
+			// there are not enough funds in the account
+			return false;
+		}
+		ledger.set(accountNumber, balance - amount);
+		return true;
+	}
+
+	private boolean deposit(long amount) {
+		if (amount < 0) {
+			return false; // can not deposit a negative amount
+		}
+		ledger.set(accountNumber, ledger.get(accountNumber) + amount);
+		return true;
+	}
+
+	@Override
+	public void onReceive(Object msg) throws Exception {
+		if (msg instanceof BankAccount.Withdraw) {
+			boolean done = withdraw(((BankAccount.Withdraw) msg).getAmount());
+			log.debug("sending bank withdraw result");
+			sender().tell(
+					BankAccount.reply(((BankAccount.Withdraw) msg).getId(),
+							BankAccount.status(done)), getSelf());
+		} else if (msg instanceof BankAccount.Deposit) {
+			boolean done = deposit(((BankAccount.Deposit) msg).getAmount());
+			log.debug("sending bank deposit result");
+			sender().tell(
+					BankAccount.reply(((BankAccount.Deposit) msg).getId(),
+							BankAccount.status(done)), getSelf());
+		} else if (msg instanceof BankAccount.BalanceRequest) {
+			log.debug("sending balance");
+			sender().tell(
+					new BankAccount.Balance(ledger.get(accountNumber),
+							((BankAccount.BalanceRequest) msg).getId()),
+					getSelf());
+		}
+	}
+
+	public static Props props(final int accountNumber,
+			final BalanceStore ledger) {
+		return Props.create(new LedgerBankAccountCreator(accountNumber, ledger));
+	}
+
+	public static class LedgerBankAccountCreator implements
+			Creator<LedgerBankAccount> {
+		private static final long serialVersionUID = 1L;
+		private int accountNumber;
+		private BalanceStore ledger;
+
+		public LedgerBankAccountCreator(final int accountNumber,
+				final BalanceStore ledger) {
+			this.accountNumber = accountNumber;
+			this.ledger = ledger;
+		}
+
+		@Override
+		public LedgerBankAccount create() throws Exception {
+			return new LedgerBankAccount(accountNumber, ledger);
+		}
+	}
+
+}
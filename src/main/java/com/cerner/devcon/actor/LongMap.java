@@ -0,0 +1,108 @@
+package com.cerner.devcon.actor;
+
+/**
+ * Map from primitive long keys to non null values, with open addressing and
+ * linear probing, so keys are not boxed and there is no entry object per
+ * mapping. Removal shifts the following entries back instead of leaving
+ * tombstones.
+ *
+ * Not thread safe; meant to be owned by one actor.
+ */
+final class LongMap<V> {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private long[] keys;
+	private Object[] values;
+	private int size;
+
+	LongMap() {
+		keys = new long[INITIAL_CAPACITY];
+		values = new Object[INITIAL_CAPACITY];
+	}
+
+	int size() {
+		return size;
+	}
+
+	@SuppressWarnings("unchecked")
+	V get(long key) {
+		int i = indexOf(key);
+		return i < 0 ? null : (V) values[i];
+	}
+
+	void put(long key, V value) {
+		if (value == null) {
+			throw new NullPointerException("value");
+		}
+		// keep the table at most half full
+		if (size * 2 >= keys.length) {
+			resize(keys.length * 2);
+		}
+		int mask = keys.length - 1;
+		int i = hash(key) & mask;
+		while (values[i] != null) {
+			if (keys[i] == key) {
+				values[i] = value;
+				return;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		values[i] = value;
+		size++;
+	}
+
+	@SuppressWarnings("unchecked")
+	V remove(long key) {
+		int i = indexOf(key);
+		if (i < 0) {
+			return null;
+		}
+		V value = (V) values[i];
+		int mask = keys.length - 1;
+		// move back the entries that probed past the removed one
+		int hole = i;
+		for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+			int home = hash(keys[j]) & mask;
+			if (((j - home) & mask) >= ((j - hole) & mask)) {
+				keys[hole] = keys[j];
+				values[hole] = values[j];
+				hole = j;
+			}
+		}
+		values[hole] = null;
+		size--;
+		return value;
+	}
+
+	private int indexOf(long key) {
+		int mask = keys.length - 1;
+		for (int i = hash(key) & mask; values[i] != null; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void resize(int capacity) {
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		keys = new long[capacity];
+		values = new Object[capacity];
+		size = 0;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldValues[i] != null) {
+				put(oldKeys[i], (V) oldValues[i]);
+			}
+		}
+	}
+
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+}
@@ -0,0 +1,243 @@
+package com.cerner.devcon.actor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import akka.actor.ActorRef;
+import akka.actor.Props;
+import akka.actor.UntypedActor;
+import akka.event.Logging;
+import akka.event.LoggingAdapter;
+import akka.japi.Creator;
+
+import com.cerner.devcon.bank.BalanceSnapshot;
+import com.cerner.devcon.bank.HeapBalanceStore;
+import com.cerner.devcon.bank.MappedJournal;
+
+/**
+ * Event sourced BankAccount actor. Each accepted Withdraw or Deposit is
+ * appended to a {@link MappedJournal}, and the balance is rebuilt by
+ * replaying the journal when the actor starts.
+ *
+ * Every snapshotEvery events the balance is written to a
+ * {@link BalanceSnapshot} in the journal directory and the journal segments
+ * it covers are deleted, so a restart loads the snapshot and replays only
+ * the events after it.
+ *
+ * Group commit: replies are held back until the journal has been forced.
+ * The first operation after a commit sends the actor a Commit message, which
+ * arrives behind everything already in the mailbox, so one force covers all
+ * the operations that queued up meanwhile. A commit is also done once
+ * maxGroup replies are waiting. A balance request waiting behind
+ * uncommitted operations is answered after them.
+ *
+ * Takes the same messages as {@link BankAccount}; rejected operations are
+ * not journaled and are answered with FAILED.
+ */
+public class PersistentBankAccount extends UntypedActor {
+
+	LoggingAdapter log = Logging.getLogger(getContext().system(), this);
+
+	public static final int DEFAULT_MAX_GROUP = 4096;
+
+	public static final long DEFAULT_SNAPSHOT_EVERY = 100000;
+
+	static final String SNAPSHOT = "snapshot";
+
+	private static final Object COMMIT = new Object();
+
+	private final int accountNumber;
+
+	private final File directory;
+
+	private final int maxGroup;
+
+	private final long snapshotEvery;
+
+	private MappedJournal journal;
+
+	// journal position of the last snapshot
+	private long snapshotPosition;
+
+	private long accountBalance;
+
+	// replies waiting for the next commit
+	private final List<ActorRef> waiting = new ArrayList<ActorRef>();
+	private final List<Object> replies = new ArrayList<Object>();
+
+	public PersistentBankAccount(int accountNumber, File directory,
+			int maxGroup, long snapshotEvery) {
+		this.accountNumber = accountNumber;
+		this.directory = directory;
+		this.maxGroup = maxGroup;
+		this.snapshotEvery = snapshotEvery;
+	}
+
+	@Override
+	public void preStart() throws Exception {
+		journal = new MappedJournal(directory);
+		File snapshot = new File(directory, SNAPSHOT);
+		if (snapshot.exists()) {
+			HeapBalanceStore balance = new HeapBalanceStore(1);
+			snapshotPosition = BalanceSnapshot.load(snapshot, balance);
+			accountBalance = balance.get(0);
+		}
+		long events = journal.replay(snapshotPosition,
+				new MappedJournal.Visitor() {
+					@Override
+					public void event(int type, int account, long amount) {
+						if (type == MappedJournal.DEPOSIT) {
+							accountBalance += amount;
+						} else {
+							accountBalance -= amount;
+						}
+					}
+				});
+		log.info("account {} replayed {} events after snapshot, balance {}",
+				accountNumber, events, accountBalance);
+	}
+
+	@Override
+	public void postStop() throws Exception {
+		if (journal != null) {
+			commit();
+		}
+	}
+
+	@Override
+	public void onReceive(Object msg) throws Exception {
+		if (msg instanceof BankAccount.Withdraw) {
+			BankAccount.Withdraw withdraw = (BankAccount.Withdraw) msg;
+			long amount = withdraw.getAmount();
+			boolean done = amount >= 0 && amount <= accountBalance;
+			if (done) {
+				journal.append(MappedJournal.WITHDRAW, accountNumber, amount);
+				accountBalance -= amount;
+			}
+			later(BankAccount.reply(withdraw.getId(),
+					BankAccount.status(done)));
+		} else if (msg instanceof BankAccount.Deposit) {
+			BankAccount.Deposit deposit = (BankAccount.Deposit) msg;
+			long amount = deposit.getAmount();
+			boolean done = amount >= 0;
+			if (done) {
+				journal.append(MappedJournal.DEPOSIT, accountNumber, amount);
+				accountBalance += amount;
+			}
+			later(BankAccount.reply(deposit.getId(),
+					BankAccount.status(done)));
+		} else if (msg instanceof BankAccount.BalanceRequest) {
+			BankAccount.Balance balance = new BankAccount.Balance(
+					accountBalance, ((BankAccount.BalanceRequest) msg).getId());
+			if (waiting.isEmpty()) {
+				sender().tell(balance, getSelf());
+			} else {
+				later(balance);
+			}
+		} else if (msg == COMMIT) {
+			commit();
+		} else {
+			unhandled(msg);
+		}
+	}
+
+	private void later(Object reply) throws IOException {
+		if (waiting.isEmpty()) {
+			getSelf().tell(COMMIT, getSelf());
+		}
+		waiting.add(getSender());
+		replies.add(reply);
+		if (waiting.size() >= maxGroup) {
+			commit();
+		}
+	}
+
+	private void commit() throws IOException {
+		if (waiting.isEmpty()) {
+			return;
+		}
+		journal.force();
+		if (journal.position() - snapshotPosition >= snapshotEvery) {
+			snapshot();
+		}
+		if (log.isDebugEnabled()) {
+			log.debug("committed {} operations", waiting.size());
+		}
+		for (int i = 0; i < waiting.size(); i++) {
+			waiting.get(i).tell(replies.get(i), getSelf());
+		}
+		waiting.clear();
+		replies.clear();
+	}
+
+	/**
+	 * Write the balance, which is committed, to the snapshot and drop the
+	 * journal it covers.
+	 */
+	private void snapshot() throws IOException {
+		long position = journal.position();
+		BalanceSnapshot.write(new File(directory, SNAPSHOT),
+				new long[] { accountBalance }, 1, position);
+		journal.deleteBefore(position);
+		snapshotPosition = position;
+		if (log.isDebugEnabled()) {
+			log.debug("snapshot at {}", position);
+		}
+	}
+
+	/**
+	 * @param directory
+	 *            journal directory of this account
+	 */
+	public static Props props(final int accountNumber, final File directory) {
+		return props(accountNumber, directory, DEFAULT_MAX_GROUP);
+	}
+
+	/**
+	 * @param maxGroup
+	 *            most operations committed with one force; 1 forces the
+	 *            journal for every operation
+	 */
+	public static Props props(final int accountNumber, final File directory,
+			final int maxGroup) {
+		return props(accountNumber, directory, maxGroup,
+				DEFAULT_SNAPSHOT_EVERY);
+	}
+
+	/**
+	 * @param snapshotEvery
+	 *            journal events between snapshots
+	 */
+	public static Props props(final int accountNumber, final File directory,
+			final int maxGroup, final long snapshotEvery) {
+		return Props.create(new PersistentBankAccountCreator(accountNumber,
+				directory, maxGroup, snapshotEvery));
+	}
+
+	public static class PersistentBankAccountCreator implements
+			Creator<PersistentBankAccount> {
+		private static final long serialVersionUID = 1L;
+		private int accountNumber;
+		private File directory;
+		private int maxGroup;
+		private long snapshotEvery;
+
+		public PersistentBankAccountCreator(final int accountNumber,
+				final File directory, final int maxGroup,
+				final long snapshotEvery) {
+			this.accountNumber = accountNumber;
+			this.directory = directory;
+			this.maxGroup = maxGroup;
+			this.snapshotEvery = snapshotEvery;
+		}
+
+		@Override
+		public PersistentBankAccount create() throws Exception {
+			return new PersistentBankAccount(accountNumber, directory,
+					maxGroup, snapshotEvery);
+		}
+	}
+
+}
@@ -0,0 +1,272 @@
+package com.cerner.devcon.actor;
+
+import java.util.concurrent.TimeUnit;
+
+import scala.concurrent.Future;
+import scala.concurrent.Promise;
+import scala.concurrent.duration.Duration;
+import scala.concurrent.duration.FiniteDuration;
+import akka.actor.ActorRef;
+import akka.actor.Cancellable;
+import akka.actor.Props;
+import akka.actor.UntypedActor;
+import akka.dispatch.Futures;
+import akka.event.Logging;
+import akka.event.LoggingAdapter;
+import akka.japi.Creator;
+import akka.pattern.AskTimeoutException;
+import akka.util.Timeout;
+
+/**
+ * Client side replacement for ask against {@link BankAccount} and its
+ * variants.
+ *
+ * Each ask through {@link #ask(ActorRef, ActorRef, Object, Timeout)} is
+ * tagged with a correlation id and told to the account with the aggregator as
+ * sender. The account echoes the id in its reply, which completes the
+ * caller's future from a map keyed by the primitive id. Instead of a
+ * temporary actor and a scheduled task per ask, all deadlines share one
+ * hashed timer wheel driven by a single repeating tick.
+ *
+ * Futures complete with the same reply ask would give: a TransactionStatus
+ * for a Withdraw or Deposit (a TransactionResult if the caller gave an id),
+ * a Balance for a BalanceRequest, or an AskTimeoutException.
+ */
+public class ReplyAggregator extends UntypedActor {
+
+	LoggingAdapter log = Logging.getLogger(getContext().system(), this);
+
+	public static final FiniteDuration DEFAULT_TICK = Duration.create(10,
+			TimeUnit.MILLISECONDS);
+
+	public static final int DEFAULT_WHEEL_SIZE = 512;
+
+	private static final Object TICK = new Object();
+
+	private final long tickNanos;
+
+	// slot i holds the ids whose deadline falls in it, with count[i] used
+	private final long[][] wheel;
+	private final int[] counts;
+	private final int wheelMask;
+	private int cursor;
+
+	private Cancellable ticker;
+
+	private long nextId;
+
+	private final LongMap<Pending> pending = new LongMap<Pending>();
+
+	/**
+	 * @param tick
+	 *            resolution of the deadlines
+	 * @param wheelSize
+	 *            number of slots, rounded up to a power of two
+	 */
+	public ReplyAggregator(FiniteDuration tick, int wheelSize) {
+		if (wheelSize < 1) {
+			throw new IllegalArgumentException("wheel size " + wheelSize);
+		}
+		int size = Integer.highestOneBit(wheelSize);
+		if (size < wheelSize) {
+			size <<= 1;
+		}
+		this.tickNanos = tick.toNanos();
+		this.wheel = new long[size][];
+		this.counts = new int[size];
+		for (int i = 0; i < size; i++) {
+			wheel[i] = new long[16];
+		}
+		this.wheelMask = size - 1;
+	}
+
+	@Override
+	public void preStart() {
+		FiniteDuration tick = Duration.fromNanos(tickNanos);
+		ticker = getContext()
+				.system()
+				.scheduler()
+				.schedule(tick, tick, getSelf(), TICK,
+						getContext().dispatcher(), null);
+	}
+
+	@Override
+	public void postStop() {
+		ticker.cancel();
+	}
+
+	@Override
+	public void onReceive(Object msg) throws Exception {
+		if (msg instanceof BankAccount.TransactionResult) {
+			BankAccount.TransactionResult result = (BankAccount.TransactionResult) msg;
+			Pending p = pending.remove(result.getId());
+			if (p != null) {
+				p.promise.trySuccess(BankAccount.reply(p.clientId,
+						result.getStatus()));
+			} else if (log.isDebugEnabled()) {
+				log.debug("late reply {}", result.getId());
+			}
+		} else if (msg instanceof BankAccount.Balance) {
+			BankAccount.Balance balance = (BankAccount.Balance) msg;
+			Pending p = pending.remove(balance.getId());
+			if (p != null) {
+				p.promise.trySuccess(new BankAccount.Balance(balance
+						.getAmount(), p.clientId));
+			} else if (log.isDebugEnabled()) {
+				log.debug("late reply {}", balance.getId());
+			}
+		} else if (msg instanceof Request) {
+			send((Request) msg);
+		} else if (msg == TICK) {
+			expire();
+		} else {
+			unhandled(msg);
+		}
+	}
+
+	private void send(Request request) {
+		long id = nextId++;
+		Object tagged;
+		long clientId;
+		Object msg = request.message;
+		if (msg instanceof BankAccount.Withdraw) {
+			BankAccount.Withdraw withdraw = (BankAccount.Withdraw) msg;
+			tagged = new BankAccount.Withdraw(withdraw.getAmount(), id);
+			clientId = withdraw.getId();
+		} else if (msg instanceof BankAccount.Deposit) {
+			BankAccount.Deposit deposit = (BankAccount.Deposit) msg;
+			tagged = new BankAccount.Deposit(deposit.getAmount(), id);
+			clientId = deposit.getId();
+		} else if (msg instanceof BankAccount.BalanceRequest) {
+			tagged = new BankAccount.BalanceRequest(id);
+			clientId = ((BankAccount.BalanceRequest) msg).getId();
+		} else {
+			request.promise.tryFailure(new IllegalArgumentException(
+					"can not correlate " + msg));
+			return;
+		}
+		pending.put(id, new Pending(request, clientId, System.nanoTime()));
+		// at least one tick ahead, so the slot is not the one being visited;
+		// a longer timeout than one turn is kept until its own turn
+		long ticks = Math.max(1, request.timeoutNanos / tickNanos);
+		addToSlot((int) ((cursor + ticks) & wheelMask), id);
+		request.target.tell(tagged, getSelf());
+	}
+
+	/**
+	 * Advance the wheel one slot and time out the asks in it whose deadline
+	 * is within a tick. The others are further away than one turn of the
+	 * wheel and stay for the next turn.
+	 */
+	private void expire() {
+		cursor = (cursor + 1) & wheelMask;
+		long[] ids = wheel[cursor];
+		int count = counts[cursor];
+		int kept = 0;
+		long now = System.nanoTime();
+		for (int i = 0; i < count; i++) {
+			long id = ids[i];
+			Pending p = pending.get(id);
+			if (p == null) {
+				continue; // already answered
+			}
+			if (p.deadline - now < tickNanos) {
+				pending.remove(id);
+				p.promise.tryFailure(new AskTimeoutException("no reply to "
+						+ p.message + " within " + p.timeoutMillis + " ms"));
+			} else {
+				ids[kept++] = id;
+			}
+		}
+		counts[cursor] = kept;
+	}
+
+	private void addToSlot(int slot, long id) {
+		if (counts[slot] == wheel[slot].length) {
+			long[] grown = new long[counts[slot] * 2];
+			System.arraycopy(wheel[slot], 0, grown, 0, counts[slot]);
+			wheel[slot] = grown;
+		}
+		wheel[slot][counts[slot]++] = id;
+	}
+
+	/**
+	 * Ask target through the aggregator, like Patterns.ask.
+	 *
+	 * @param aggregator
+	 *            a ReplyAggregator
+	 * @return the future reply
+	 */
+	public static Future<Object> ask(ActorRef aggregator, ActorRef target,
+			Object message, Timeout timeout) {
+		Promise<Object> promise = Futures.promise();
+		aggregator.tell(new Request(target, message, promise, timeout
+				.duration().toNanos()), ActorRef.noSender());
+		return promise.future();
+	}
+
+	/**
+	 * An ask sent through the aggregator.
+	 */
+	static final class Request {
+		final ActorRef target;
+		final Object message;
+		final Promise<Object> promise;
+		final long timeoutNanos;
+
+		Request(ActorRef target, Object message, Promise<Object> promise,
+				long timeoutNanos) {
+			this.target = target;
+			this.message = message;
+			this.promise = promise;
+			this.timeoutNanos = timeoutNanos;
+		}
+	}
+
+	/**
+	 * An ask waiting for its reply.
+	 */
+	private static final class Pending {
+		final Promise<Object> promise;
+		final Object message;
+		final long clientId;
+		final long deadline;
+		final long timeoutMillis;
+
+		Pending(Request request, long clientId, long now) {
+			this.promise = request.promise;
+			this.message = request.message;
+			this.clientId = clientId;
+			this.deadline = now + request.timeoutNanos;
+			this.timeoutMillis = TimeUnit.NANOSECONDS
+					.toMillis(request.timeoutNanos);
+		}
+	}
+
+	public static Props props() {
+		return props(DEFAULT_TICK, DEFAULT_WHEEL_SIZE);
+	}
+
+	public static Props props(final FiniteDuration tick, final int wheelSize) {
+		return Props.create(new ReplyAggregatorCreator(tick, wheelSize));
+	}
+
+	public static class ReplyAggregatorCreator implements
+			Creator<ReplyAggregator> {
+		private static final long serialVersionUID = 1L;
+		private FiniteDuration tick;
+		private int wheelSize;
+
+		public ReplyAggregatorCreator(final FiniteDuration tick,
+				final int wheelSize) {
+			this.tick = tick;
+			this.wheelSize = wheelSize;
+		}
+
+		@Override
+		public ReplyAggregator create() throws Exception {
+			return new ReplyAggregator(tick, wheelSize);
+		}
+	}
+
+}
@@ -0,0 +1,235 @@
+package com.cerner.devcon.actor;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import scala.concurrent.duration.FiniteDuration;
+import akka.actor.ActorRef;
+import akka.actor.Cancellable;
+import akka.actor.Props;
+import akka.actor.UntypedActor;
+import akka.event.Logging;
+import akka.event.LoggingAdapter;
+import akka.japi.Creator;
+import akka.routing.RoundRobinPool;
+
+/**
+ * Long lived actor that runs many transfers at once.
+ *
+ * Does the same withdraw-then-deposit as {@link BankTransfer}, but instead of
+ * one actor per transfer moving through states with become(), it gives each
+ * transfer a correlation id and keeps it in a map while it is in flight. The
+ * accounts echo the id back in a {@link BankAccount.TransactionResult}, which
+ * selects the transfer and its current step.
+ *
+ * Accepts {@link BankTransfer.Transfer} and answers the sender with a
+ * {@link BankTransfer.TransferStatus}, like BankTransfer. A failed deposit is
+ * refunded to the from account. A transfer still in flight after the timeout
+ * is answered FAILED but stays in the map for its late reply, as in
+ * BankTransfer: a late withdraw is refunded, and a transfer with no reply
+ * at all is logged as an error with an unknown outcome and dropped. Expired
+ * transfers are reaped by one periodic tick rather than a timer per
+ * transfer.
+ */
+public class TransferCoordinator extends UntypedActor {
+
+	LoggingAdapter log = Logging.getLogger(getContext().system(), this);
+
+	private static final Object REAP = new Object();
+
+	// steps of a transfer
+	private static final int WITHDRAWING = 0;
+	private static final int DEPOSITING = 1;
+	private static final int REFUNDING = 2;
+
+	private final FiniteDuration timeout;
+
+	private Cancellable reaper;
+
+	private long nextId;
+
+	private final Map<Long, InFlight> inFlight = new HashMap<Long, InFlight>();
+
+	public TransferCoordinator(FiniteDuration timeout) {
+		this.timeout = timeout;
+	}
+
+	@Override
+	public void preStart() {
+		// a transfer is reaped between one and one and a half timeouts
+		FiniteDuration interval = timeout.div(2);
+		reaper = getContext()
+				.system()
+				.scheduler()
+				.schedule(interval, interval, getSelf(), REAP,
+						getContext().dispatcher(), null);
+	}
+
+	@Override
+	public void postStop() {
+		reaper.cancel();
+	}
+
+	@Override
+	public void onReceive(Object msg) throws Exception {
+		if (msg instanceof BankTransfer.Transfer) {
+			log.debug("received transfer message");
+			BankTransfer.Transfer txfr = (BankTransfer.Transfer) msg;
+			long id = nextId++;
+			inFlight.put(id, new InFlight(txfr, getSender(), System.nanoTime()
+					+ timeout.toNanos()));
+			txfr.getFrom().tell(new BankAccount.Withdraw(txfr.getAmount(), id),
+					getSelf());
+		} else if (msg instanceof BankAccount.TransactionResult) {
+			BankAccount.TransactionResult result = (BankAccount.TransactionResult) msg;
+			InFlight txfr = inFlight.get(result.getId());
+			if (txfr == null) {
+				log.warning("reply for unknown transfer {}", result.getId());
+				return;
+			}
+			boolean done = result.getStatus() == BankAccount.TransactionStatus.DONE;
+			if (txfr.step == WITHDRAWING && done && txfr.customer == null) {
+				// answered FAILED when it timed out, so give the amount back
+				log.warning("late transfer withdraw of {} done, refunding",
+						txfr.transfer.getAmount());
+				refund(result.getId(), txfr);
+			} else if (txfr.step == WITHDRAWING && done) {
+				log.debug("received transfer withdraw done");
+				txfr.step = DEPOSITING;
+				txfr.transfer.getTo().tell(
+						new BankAccount.Deposit(txfr.transfer.getAmount(),
+								result.getId()), getSelf());
+			} else if (txfr.step == DEPOSITING && !done) {
+				// compensate by giving the amount back to the from account
+				log.debug("received transfer deposit failed, refunding");
+				refund(result.getId(), txfr);
+			} else {
+				if (txfr.step == REFUNDING && !done) {
+					log.error("refund of {} to {} failed",
+							txfr.transfer.getAmount(), txfr.transfer.getFrom());
+				} else if (txfr.step == DEPOSITING && txfr.customer == null) {
+					log.error("transfer of {} was done after it timed out",
+							txfr.transfer.getAmount());
+				}
+				inFlight.remove(result.getId());
+				if (txfr.customer != null) {
+					txfr.customer.tell(
+							txfr.step == DEPOSITING ? BankTransfer.TransferStatus.DONE
+									: BankTransfer.TransferStatus.FAILED,
+							getSelf());
+				}
+			}
+		} else if (msg == REAP) {
+			reap();
+		} else {
+			unhandled(msg);
+		}
+	}
+
+	private void refund(long id, InFlight txfr) {
+		txfr.step = REFUNDING;
+		txfr.transfer.getFrom().tell(
+				new BankAccount.Deposit(txfr.transfer.getAmount(), id),
+				getSelf());
+	}
+
+	/**
+	 * Answer FAILED for the transfers past their deadline and keep them for
+	 * their late reply until a second, longer deadline. Those past that
+	 * deadline too are forgotten with their outcome unknown; as in
+	 * BankTransfer, a deposit that timed out is not refunded since it may
+	 * still have been made.
+	 */
+	private void reap() {
+		long now = System.nanoTime();
+		Iterator<InFlight> i = inFlight.values().iterator();
+		while (i.hasNext()) {
+			InFlight txfr = i.next();
+			if (now - txfr.deadline <= 0) {
+				continue;
+			}
+			if (txfr.customer == null) {
+				log.error("transfer of {} from {} to {} never answered, "
+						+ "outcome unknown", txfr.transfer.getAmount(),
+						txfr.transfer.getFrom(), txfr.transfer.getTo());
+				i.remove();
+			} else {
+				if (txfr.step == WITHDRAWING) {
+					log.warning("transfer withdraw of {} timed out",
+							txfr.transfer.getAmount());
+				} else {
+					log.error("transfer of {} timed out, outcome unknown",
+							txfr.transfer.getAmount());
+				}
+				txfr.customer.tell(BankTransfer.TransferStatus.FAILED,
+						getSelf());
+				txfr.customer = null;
+				txfr.deadline = now
+						+ timeout.toNanos() * BankTransfer.LATE_REPLY_TIMEOUTS;
+			}
+		}
+	}
+
+	/**
+	 * State of one transfer while it is in flight.
+	 */
+	private static class InFlight {
+		final BankTransfer.Transfer transfer;
+		// null once answered at its timeout
+		ActorRef customer;
+		long deadline;
+		int step = WITHDRAWING;
+
+		InFlight(BankTransfer.Transfer transfer, ActorRef customer,
+				long deadline) {
+			this.transfer = transfer;
+			this.customer = customer;
+			this.deadline = deadline;
+		}
+	}
+
+	public static Props props() {
+		return props(BankTransfer.DEFAULT_TIMEOUT);
+	}
+
+	/**
+	 * @param timeout
+	 *            longest a transfer may stay in flight
+	 */
+	public static Props props(final FiniteDuration timeout) {
+		return Props.create(new TransferCoordinatorCreator(timeout));
+	}
+
+	public static class TransferCoordinatorCreator implements
+			Creator<TransferCoordinator> {
+		private static final long serialVersionUID = 1L;
+		private FiniteDuration timeout;
+
+		public TransferCoordinatorCreator(final FiniteDuration timeout) {
+			this.timeout = timeout;
+		}
+
+		@Override
+		public TransferCoordinator create() throws Exception {
+			return new TransferCoordinator(timeout);
+		}
+	}
+
+	/**
+	 * Round robin pool of coordinators, for when one is not enough to keep
+	 * up. Each transfer stays on the coordinator that received it.
+	 */
+	public static Props pool(int size) {
+		return new RoundRobinPool(size).props(props());
+	}
+
+	/**
+	 * Pool of coordinators running on the given dispatcher, see
+	 * {@link DispatcherProfiles}.
+	 */
+	public static Props pool(int size, String dispatcher) {
+		return new RoundRobinPool(size).props(props().withDispatcher(dispatcher));
+	}
+
+}
@@ -0,0 +1,18 @@
+package com.cerner.devcon.bank;
+
+/**
+ * Accounts addressed by accountNumber, with amounts and balances in minor
+ * units. Implemented by each keyed engine so callers can pick one in
+ * configuration, see {@link AccountEngines}.
+ */
+public interface AccountEngine {
+
+	public boolean deposit(int accountNumber, long amount);
+
+	public boolean withdraw(int accountNumber, long amount);
+
+	public boolean transfer(int from, long amount, int to);
+
+	public long balance(int accountNumber);
+
+}
@@ -0,0 +1,44 @@
+package com.cerner.devcon.bank;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+/**
+ * Creates the {@link AccountEngine} selected in configuration, under
+ * devcon.bank in application.conf:
+ *
+ * <pre>
+ * devcon.bank {
+ *   engine = "striped"   # or "ring-buffer"
+ *   accounts = 1000000
+ *   stripes = 1024       # striped only
+ *   ring-size = 8192     # ring-buffer only
+ * }
+ * </pre>
+ */
+public class AccountEngines {
+
+	public static final String STRIPED = "striped";
+
+	public static final String RING_BUFFER = "ring-buffer";
+
+	/**
+	 * Engine from application.conf.
+	 */
+	public static AccountEngine load() {
+		return create(ConfigFactory.load());
+	}
+
+	public static AccountEngine create(Config config) {
+		Config bank = config.getConfig("devcon.bank");
+		String engine = bank.getString("engine");
+		int accounts = bank.getInt("accounts");
+		if (STRIPED.equals(engine)) {
+			return new StripedAccountRegistry(accounts, bank.getInt("stripes"));
+		} else if (RING_BUFFER.equals(engine)) {
+			return new RingBufferEngine(accounts, bank.getInt("ring-size"));
+		}
+		throw new IllegalArgumentException("unknown engine " + engine);
+	}
+
+}
@@ -0,0 +1,63 @@
+package com.cerner.devcon.bank;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Lock free BankAccount.
+ *
+ * The balance is a long of minor units (cents) updated with compare and set,
+ * so there is no lost update and no monitor to serialize on. Withdraw retries
+ * until it either commits or sees that the funds are not there.
+ */
+public class AtomicBankAccount {
+
+	private static final AtomicLongFieldUpdater<AtomicBankAccount> BALANCE = AtomicLongFieldUpdater
+			.newUpdater(AtomicBankAccount.class, "accountBalance");
+
+	int accountNumber;
+
+	volatile long accountBalance;
+
+	public AtomicBankAccount() {
+	}
+
+	public AtomicBankAccount(int accountNumber) {
+		this.accountNumber = accountNumber;
+	}
+
+	// to withdraw funds from the account
+	public boolean withdraw(long amount) {
+		if (amount < 0) {
+			return false; // can not withdraw a negative amount
+		}
+		while (true) {
+			long current = accountBalance;
+			if (amount > current) {
+				// there are not enough funds in the account
+				return false;
+			}
+			// only commits if no other thread changed the balance since it
+			// was read, otherwise read again and retry
+			if (BALANCE.compareAndSet(this, current, current - amount)) {
+				return true;
+			}
+		}
+	}
+
+	public boolean deposit(long amount) {
+		if (amount < 0) {
+			return false; // can not deposit a negative amount
+		}
+		BALANCE.getAndAdd(this, amount);
+		return true;
+	}
+
+	public long balance() {
+		return accountBalance;
+	}
+
+	public int getAccountNumber() {
+		return accountNumber;
+	}
+
+}
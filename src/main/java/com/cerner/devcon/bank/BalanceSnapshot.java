@@ -0,0 +1,164 @@
+package com.cerner.devcon.bank;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Binary snapshot of account balances, indexed by accountNumber, together
+ * with the {@link MappedJournal} position it covers up to.
+ *
+ * The file is a small header followed by one 8 byte balance per account.
+ * Recovery loads the snapshot and replays only the journal events from its
+ * position on. Loading is split into chunks of accounts that are read from
+ * the mapped file in parallel.
+ *
+ * A snapshot is written to a temporary file and renamed over the old one,
+ * so a crash while writing leaves the previous snapshot in place.
+ */
+public final class BalanceSnapshot {
+
+	private static final long MAGIC = 0x534e415053484f54L; // "SNAPSHOT"
+
+	private static final int HEADER_SIZE = 64;
+
+	private BalanceSnapshot() {
+	}
+
+	/**
+	 * Write the balances of accounts 0 to count - 1.
+	 *
+	 * @param journalPosition
+	 *            position of the first journal event not in the balances
+	 */
+	public static void write(File file, long[] balances, int count,
+			long journalPosition) throws IOException {
+		if (count < 0 || count > balances.length
+				|| count > (Integer.MAX_VALUE - HEADER_SIZE) / 8) {
+			throw new IllegalArgumentException("count " + count);
+		}
+		File temp = new File(file.getPath() + ".tmp");
+		RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+		try {
+			raf.setLength(HEADER_SIZE + (long) count * 8);
+			MappedByteBuffer buffer = raf.getChannel().map(
+					FileChannel.MapMode.READ_WRITE, 0, raf.length());
+			buffer.putLong(0, MAGIC);
+			buffer.putLong(8, journalPosition);
+			buffer.putInt(16, count);
+			buffer.position(HEADER_SIZE);
+			buffer.asLongBuffer().put(balances, 0, count);
+			buffer.force();
+		} finally {
+			raf.close();
+		}
+		// the old snapshot stays until the new one replaces it
+		try {
+			Files.move(temp.toPath(), file.toPath(),
+					StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp.toPath(), file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Load the snapshot into balances in the calling thread.
+	 *
+	 * @return the journal position the snapshot covers up to
+	 */
+	public static long load(File file, BalanceStore balances)
+			throws IOException {
+		return load(file, balances, null, 1);
+	}
+
+	/**
+	 * Load the snapshot into balances, in chunks run on the executor.
+	 *
+	 * @param executor
+	 *            runs the chunks; null loads in the calling thread
+	 * @param chunks
+	 *            number of pieces the accounts are split into
+	 * @return the journal position the snapshot covers up to
+	 * @throws IOException
+	 *             if the file is not a snapshot or has more accounts than
+	 *             balances
+	 */
+	public static long load(File file, final BalanceStore balances,
+			ExecutorService executor, int chunks) throws IOException {
+		if (chunks < 1) {
+			throw new IllegalArgumentException("chunks " + chunks);
+		}
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			MappedByteBuffer buffer = raf.getChannel().map(
+					FileChannel.MapMode.READ_ONLY, 0, raf.length());
+			if (raf.length() < HEADER_SIZE || buffer.getLong(0) != MAGIC) {
+				throw new IOException(file + " is not a snapshot");
+			}
+			long journalPosition = buffer.getLong(8);
+			int count = buffer.getInt(16);
+			if (raf.length() != HEADER_SIZE + (long) count * 8) {
+				throw new IOException(file + " is truncated");
+			}
+			if (count > balances.capacity()) {
+				throw new IOException(file + " has " + count
+						+ " accounts, more than " + balances.capacity());
+			}
+			buffer.position(HEADER_SIZE);
+			final LongBuffer slots = buffer.asLongBuffer();
+
+			int chunkSize = (count + chunks - 1) / chunks;
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+			for (int start = 0; start < count; start += chunkSize) {
+				final int from = start;
+				final int to = Math.min(count, start + chunkSize);
+				tasks.add(new Callable<Void>() {
+					@Override
+					public Void call() {
+						for (int i = from; i < to; i++) {
+							balances.set(i, slots.get(i));
+						}
+						return null;
+					}
+				});
+			}
+			if (executor == null) {
+				for (Callable<Void> task : tasks) {
+					task.call();
+				}
+			} else {
+				for (Future<Void> future : executor.invokeAll(tasks)) {
+					future.get();
+				}
+			}
+			return journalPosition;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted loading " + file);
+		} catch (ExecutionException e) {
+			throw new IOException("can not load " + file, e.getCause());
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException("can not load " + file, e);
+		} finally {
+			raf.close();
+		}
+	}
+
+}
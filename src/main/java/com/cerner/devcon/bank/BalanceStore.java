@@ -0,0 +1,28 @@
+package com.cerner.devcon.bank;
+
+/**
+ * Storage for account balances in minor units, one slot per accountNumber.
+ *
+ * Every operation on a single slot is atomic. Engines that guard slots with
+ * their own locks, like {@link StripedAccountRegistry}, only need get and
+ * set; lock free users can rely on compareAndSet and add.
+ */
+public interface BalanceStore {
+
+	public long get(int accountNumber);
+
+	public void set(int accountNumber, long balance);
+
+	public boolean compareAndSet(int accountNumber, long expect, long update);
+
+	/**
+	 * @return the balance after adding delta
+	 */
+	public long add(int accountNumber, long delta);
+
+	/**
+	 * @return number of slots, accounts are numbered 0 to capacity - 1
+	 */
+	public int capacity();
+
+}
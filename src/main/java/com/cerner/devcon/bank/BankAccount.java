@@ -1,14 +1,29 @@
 package com.cerner.devcon.bank;
 
+import java.util.concurrent.locks.ReentrantLock;
+
 public class BankAccount {
 
 	int accountNumber;
 
-	double accountBalance;
+	long accountBalance;
+
+	/**
+	 * Explicit lock used by {@link OrderedLockTransfer}. The monitor based
+	 * {@link BankAccountTransfer} locks the object itself instead.
+	 */
+	final ReentrantLock lock = new ReentrantLock();
+
+	public BankAccount() {
+	}
+
+	public BankAccount(int accountNumber) {
+		this.accountNumber = accountNumber;
+	}
 
 	// to withdraw funds from the account
-	public boolean withdraw(double amount) {
-		double newAccountBalance;
+	public boolean withdraw(long amount) {
+		long newAccountBalance;
 
 		if (amount > accountBalance) {
 			// there are not enough funds in the account
@@ -32,10 +47,10 @@ public class BankAccount {
 
 	}
 
-	public boolean deposit(double amount) {
-		double newAccountBalance;
+	public boolean deposit(long amount) {
+		long newAccountBalance;
 
-		if (amount < 0.0) {
+		if (amount < 0) {
 			return false; // can not deposit a negative amount
 		}
 
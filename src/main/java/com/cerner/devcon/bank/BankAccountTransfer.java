@@ -14,7 +14,7 @@ public class BankAccountTransfer {
 	 * @param to
 	 * @return
 	 */
-	public static boolean transfer(BankAccount from, double amount,
+	public static boolean transfer(BankAccount from, long amount,
 			BankAccount to) {
 		synchronized (from) {
 			synchronized (to) {
@@ -0,0 +1,88 @@
+package com.cerner.devcon.bank;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Striped accumulator for deposits into a hot account.
+ *
+ * Each thread adds into one of several cells instead of a single shared
+ * counter, so concurrent deposits rarely touch the same cache line. A thread
+ * that loses a compare and set moves to another cell. The owner folds the
+ * cells into the real balance with {@link #drain()} when it needs an exact
+ * value.
+ */
+public class DepositCells {
+
+	// longs per cell, so that each cell sits on its own cache line
+	private static final int PAD = 8;
+
+	private static final ThreadLocal<int[]> probe = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			int h = (int) Thread.currentThread().getId() * 0x9E3779B9;
+			return new int[] { h ^ (h >>> 16) };
+		}
+	};
+
+	private final AtomicLongArray cells;
+
+	private final int mask;
+
+	public DepositCells() {
+		this(2 * Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param cellCount
+	 *            rounded up to a power of two
+	 */
+	public DepositCells(int cellCount) {
+		int size = Integer.highestOneBit(Math.max(1, cellCount));
+		if (size < cellCount) {
+			size <<= 1;
+		}
+		this.cells = new AtomicLongArray(size * PAD);
+		this.mask = size - 1;
+	}
+
+	public void add(long amount) {
+		int[] h = probe.get();
+		int i = (h[0] & mask) * PAD;
+		long current = cells.get(i);
+		if (!cells.compareAndSet(i, current, current + amount)) {
+			// contended, move this thread to another cell for next time
+			int r = h[0];
+			r ^= r << 13;
+			r ^= r >>> 17;
+			r ^= r << 5;
+			h[0] = r;
+			cells.getAndAdd(i, amount);
+		}
+	}
+
+	/**
+	 * Current total of the cells. Not exact while deposits are running.
+	 */
+	public long sum() {
+		long sum = 0;
+		for (int i = 0; i < cells.length(); i += PAD) {
+			sum += cells.get(i);
+		}
+		return sum;
+	}
+
+	/**
+	 * Take everything out of the cells. Each deposit is returned by exactly
+	 * one drain, even when deposits run at the same time.
+	 */
+	public long drain() {
+		long sum = 0;
+		for (int i = 0; i < cells.length(); i += PAD) {
+			if (cells.get(i) != 0) {
+				sum += cells.getAndSet(i, 0);
+			}
+		}
+		return sum;
+	}
+
+}
@@ -0,0 +1,41 @@
+package com.cerner.devcon.bank;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * BalanceStore in a single primitive array on the heap.
+ */
+public class HeapBalanceStore implements BalanceStore {
+
+	private final AtomicLongArray balances;
+
+	public HeapBalanceStore(int capacity) {
+		this.balances = new AtomicLongArray(capacity);
+	}
+
+	@Override
+	public long get(int accountNumber) {
+		return balances.get(accountNumber);
+	}
+
+	@Override
+	public void set(int accountNumber, long balance) {
+		balances.set(accountNumber, balance);
+	}
+
+	@Override
+	public boolean compareAndSet(int accountNumber, long expect, long update) {
+		return balances.compareAndSet(accountNumber, expect, update);
+	}
+
+	@Override
+	public long add(int accountNumber, long delta) {
+		return balances.addAndGet(accountNumber, delta);
+	}
+
+	@Override
+	public int capacity() {
+		return balances.length();
+	}
+
+}
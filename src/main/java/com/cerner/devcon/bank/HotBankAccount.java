@@ -0,0 +1,57 @@
+package com.cerner.devcon.bank;
+
+/**
+ * BankAccount for accounts that take a lot of concurrent deposits.
+ *
+ * Deposits never lock, they go into {@link DepositCells}. Withdrawals and
+ * balance reads need an exact value, so they take the account lock and fold
+ * the cells into the balance first.
+ */
+public class HotBankAccount {
+
+	int accountNumber;
+
+	// guarded by this
+	long accountBalance;
+
+	final DepositCells deposits = new DepositCells();
+
+	public HotBankAccount() {
+	}
+
+	public HotBankAccount(int accountNumber) {
+		this.accountNumber = accountNumber;
+	}
+
+	// to withdraw funds from the account
+	public synchronized boolean withdraw(long amount) {
+		if (amount < 0) {
+			return false; // can not withdraw a negative amount
+		}
+		accountBalance += deposits.drain();
+		if (amount > accountBalance) {
+			// there are not enough funds in the account
+			return false;
+		}
+		accountBalance -= amount;
+		return true;
+	}
+
+	public boolean deposit(long amount) {
+		if (amount < 0) {
+			return false; // can not deposit a negative amount
+		}
+		deposits.add(amount);
+		return true;
+	}
+
+	public synchronized long balance() {
+		accountBalance += deposits.drain();
+		return accountBalance;
+	}
+
+	public int getAccountNumber() {
+		return accountNumber;
+	}
+
+}
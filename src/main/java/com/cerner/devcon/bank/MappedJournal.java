@@ -0,0 +1,235 @@
+package com.cerner.devcon.bank;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Append only journal of account events in memory mapped segment files.
+ *
+ * Each event is a fixed 16 byte record: its type, the account number and the
+ * amount. Records are written straight into the mapped segment, so an append
+ * is a few memory writes. They are only durable after {@link #force()},
+ * which is meant to be called once for a group of appends rather than for
+ * each one.
+ *
+ * A segment is a file of segmentSize bytes in the journal directory. When it
+ * is full the next one is created. Unwritten records are zero, so the end of
+ * the journal is the first record with type 0.
+ *
+ * Every event has a position, its index from the start of the journal. A
+ * snapshot records the position it covers up to, so recovery only replays
+ * the tail after it and the segments before it can be deleted.
+ *
+ * Not thread safe; a journal has a single writer.
+ */
+public class MappedJournal {
+
+	public static final int DEPOSIT = 1;
+	public static final int WITHDRAW = 2;
+
+	public static final int RECORD_SIZE = 16;
+
+	public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+	private static final String SUFFIX = ".journal";
+
+	/**
+	 * Called for each event in the journal, in the order they were appended.
+	 */
+	public interface Visitor {
+		void event(int type, int accountNumber, long amount);
+	}
+
+	private final File directory;
+
+	private final int segmentSize;
+
+	private final int segmentRecords;
+
+	private int segment;
+
+	private MappedByteBuffer buffer;
+
+	private int position;
+
+	public MappedJournal(File directory) throws IOException {
+		this(directory, DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * Open the journal in the directory, creating it if it does not exist,
+	 * and continue after its last event.
+	 *
+	 * @param segmentSize
+	 *            bytes in each segment file, a multiple of RECORD_SIZE
+	 */
+	public MappedJournal(File directory, int segmentSize) throws IOException {
+		if (segmentSize < RECORD_SIZE || segmentSize % RECORD_SIZE != 0) {
+			throw new IllegalArgumentException("segment size " + segmentSize);
+		}
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.segmentRecords = segmentSize / RECORD_SIZE;
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("can not create " + directory);
+		}
+		File[] segments = segments();
+		segment = segments.length == 0 ? 0
+				: index(segments[segments.length - 1]);
+		buffer = map(segment);
+		while (position < segmentSize && buffer.getInt(position) != 0) {
+			position += RECORD_SIZE;
+		}
+	}
+
+	/**
+	 * Append an event. It is visible to {@link #replay(Visitor)} at once but
+	 * only durable after the next {@link #force()}.
+	 */
+	public void append(int type, int accountNumber, long amount)
+			throws IOException {
+		if (type != DEPOSIT && type != WITHDRAW) {
+			throw new IllegalArgumentException("event type " + type);
+		}
+		if (position == segmentSize) {
+			// the old segment was forced by the last group commit or is
+			// forced here, so a crash can not leave a hole before the new one
+			buffer.force();
+			buffer = map(++segment);
+			position = 0;
+		}
+		buffer.putInt(position + 4, accountNumber);
+		buffer.putLong(position + 8, amount);
+		// the type goes last, it marks the record as written
+		buffer.putInt(position, type);
+		position += RECORD_SIZE;
+	}
+
+	/**
+	 * Write the appended events to the storage device.
+	 */
+	public void force() {
+		buffer.force();
+	}
+
+	/**
+	 * Position the next event will be appended at, which is also the number
+	 * of events appended since the journal was created.
+	 */
+	public long position() {
+		return (long) segment * segmentRecords + position / RECORD_SIZE;
+	}
+
+	/**
+	 * Visit every event in the journal, oldest first.
+	 *
+	 * @return the number of events
+	 */
+	public long replay(Visitor visitor) throws IOException {
+		return replay(0, visitor);
+	}
+
+	/**
+	 * Visit the events from the given position on, oldest first.
+	 *
+	 * @throws IOException
+	 *             if events after from have been deleted
+	 * @return the number of events visited
+	 */
+	public long replay(long from, Visitor visitor) throws IOException {
+		long count = 0;
+		for (File file : segments()) {
+			long first = (long) index(file) * segmentRecords;
+			if (first + segmentRecords <= from) {
+				continue;
+			} else if (first > from + count) {
+				throw new IOException("journal " + directory
+						+ " has no events from " + (from + count) + " to "
+						+ first);
+			}
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				MappedByteBuffer segment = raf.getChannel().map(
+						FileChannel.MapMode.READ_ONLY, 0, raf.length());
+				int start = (int) (Math.max(from, first) - first)
+						* RECORD_SIZE;
+				for (int i = start; i + RECORD_SIZE <= segment.capacity(); i += RECORD_SIZE) {
+					int type = segment.getInt(i);
+					if (type == 0) {
+						break;
+					}
+					visitor.event(type, segment.getInt(i + 4),
+							segment.getLong(i + 8));
+					count++;
+				}
+			} finally {
+				raf.close();
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Delete the segments holding only events before the given position,
+	 * once a snapshot covers them. The current segment is never deleted.
+	 *
+	 * @return the number of segments deleted
+	 */
+	public int deleteBefore(long position) throws IOException {
+		int deleted = 0;
+		for (File file : segments()) {
+			int index = index(file);
+			if (index < segment
+					&& (long) (index + 1) * segmentRecords <= position) {
+				if (!file.delete()) {
+					throw new IOException("can not delete " + file);
+				}
+				deleted++;
+			}
+		}
+		return deleted;
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	private File[] segments() {
+		File[] segments = directory.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File file) {
+				return file.getName().endsWith(SUFFIX);
+			}
+		});
+		// names are zero padded, so they sort in order
+		Arrays.sort(segments);
+		return segments;
+	}
+
+	private static int index(File segment) {
+		String name = segment.getName();
+		return Integer.parseInt(name.substring(0,
+				name.length() - SUFFIX.length()));
+	}
+
+	private MappedByteBuffer map(int index) throws IOException {
+		File file = new File(directory, String.format("%08d", index) + SUFFIX);
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			if (raf.length() < segmentSize) {
+				raf.setLength(segmentSize);
+			}
+			// the mapping stays valid after the file is closed
+			return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+					segmentSize);
+		} finally {
+			raf.close();
+		}
+	}
+
+}
@@ -0,0 +1,155 @@
+package com.cerner.devcon.bank;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import sun.misc.Unsafe;
+
+/**
+ * Off heap BalanceStore backed by a memory mapped file.
+ *
+ * The file holds a small header followed by one 8 byte slot per account,
+ * indexed by accountNumber. Slots are read and updated in place with
+ * volatile and compare and swap operations on the mapped memory, so the
+ * heap does not grow with the number of accounts and the balances are still
+ * there when the file is opened again.
+ *
+ * The whole file is mapped at once, which limits it to about 268 million
+ * accounts.
+ */
+public class MappedLedger implements BalanceStore {
+
+	private static final long MAGIC = 0x4c45444745520001L; // "LEDGER" v1
+
+	// header is padded to a cache line so slots stay aligned
+	private static final int HEADER_SIZE = 64;
+
+	private static final int SLOT_SIZE = 8;
+
+	private static final Unsafe unsafe;
+
+	private static final long addressOffset;
+
+	static {
+		try {
+			Field field = Unsafe.class.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			unsafe = (Unsafe) field.get(null);
+			addressOffset = unsafe.objectFieldOffset(Buffer.class
+					.getDeclaredField("address"));
+		} catch (Exception e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private final File file;
+
+	private final MappedByteBuffer buffer;
+
+	private final long base;
+
+	private final int capacity;
+
+	/**
+	 * Open the ledger in the file, creating it with the given capacity if it
+	 * does not exist yet.
+	 *
+	 * @throws IOException
+	 *             if the file can not be mapped or was created with a
+	 *             different capacity
+	 */
+	public MappedLedger(File file, int capacity) throws IOException {
+		if (capacity < 0
+				|| capacity > (Integer.MAX_VALUE - HEADER_SIZE) / SLOT_SIZE) {
+			throw new IllegalArgumentException("capacity " + capacity);
+		}
+		this.file = file;
+		this.capacity = capacity;
+
+		boolean created = !file.exists() || file.length() == 0;
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			long size = HEADER_SIZE + (long) capacity * SLOT_SIZE;
+			if (!created && raf.length() != size) {
+				throw new IOException(file + " has " + raf.length()
+						+ " bytes, expected " + size);
+			}
+			buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+					size);
+		} finally {
+			// the mapping stays valid after the channel is closed
+			raf.close();
+		}
+		buffer.order(ByteOrder.nativeOrder());
+		base = unsafe.getLong(buffer, addressOffset) + HEADER_SIZE;
+
+		if (created) {
+			buffer.putLong(0, MAGIC);
+			buffer.putLong(8, capacity);
+		} else if (buffer.getLong(0) != MAGIC || buffer.getLong(8) != capacity) {
+			throw new IOException(file + " is not a ledger of " + capacity
+					+ " accounts");
+		}
+	}
+
+	@Override
+	public long get(int accountNumber) {
+		return unsafe.getLongVolatile(null, address(accountNumber));
+	}
+
+	@Override
+	public void set(int accountNumber, long balance) {
+		unsafe.putLongVolatile(null, address(accountNumber), balance);
+	}
+
+	@Override
+	public boolean compareAndSet(int accountNumber, long expect, long update) {
+		return unsafe.compareAndSwapLong(null, address(accountNumber), expect,
+				update);
+	}
+
+	@Override
+	public long add(int accountNumber, long delta) {
+		long address = address(accountNumber);
+		while (true) {
+			long current = unsafe.getLongVolatile(null, address);
+			if (unsafe.compareAndSwapLong(null, address, current, current
+					+ delta)) {
+				return current + delta;
+			}
+		}
+	}
+
+	@Override
+	public int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * Write dirty pages back to the file. Balances already survive a process
+	 * restart without this; it is needed to survive an OS crash.
+	 */
+	public void flush() {
+		buffer.force();
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	private long address(int accountNumber) {
+		// never touch memory outside the mapping
+		if (accountNumber < 0 || accountNumber >= capacity) {
+			throw new IllegalArgumentException("unknown account "
+					+ accountNumber);
+		}
+		return base + (long) accountNumber * SLOT_SIZE;
+	}
+
+}
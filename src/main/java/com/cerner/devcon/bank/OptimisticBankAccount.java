@@ -0,0 +1,210 @@
+package com.cerner.devcon.bank;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * BankAccount for read heavy traffic.
+ *
+ * Writers take the write lock and bump a sequence number before and after
+ * changing the balance, so it is odd while a write is in progress. Readers
+ * do not lock at all: they read the sequence, the balance and the sequence
+ * again, and keep the balance if nothing changed in between. Only a reader
+ * that keeps losing to writers falls back to the read lock.
+ */
+public class OptimisticBankAccount {
+
+	private static final int OPTIMISTIC_TRIES = 4;
+
+	private static final Comparator<OptimisticBankAccount> LOCK_ORDER = new Comparator<OptimisticBankAccount>() {
+		@Override
+		public int compare(OptimisticBankAccount a, OptimisticBankAccount b) {
+			return OptimisticBankAccount.compare(a, b);
+		}
+	};
+
+	int accountNumber;
+
+	// both written only while holding the write lock
+	private volatile long sequence;
+
+	private volatile long accountBalance;
+
+	final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	public OptimisticBankAccount() {
+	}
+
+	public OptimisticBankAccount(int accountNumber) {
+		this.accountNumber = accountNumber;
+	}
+
+	// to withdraw funds from the account
+	public boolean withdraw(long amount) {
+		if (amount < 0) {
+			return false; // can not withdraw a negative amount
+		}
+		lock.writeLock().lock();
+		try {
+			if (amount > accountBalance) {
+				// there are not enough funds in the account
+				return false;
+			}
+			write(accountBalance - amount);
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public boolean deposit(long amount) {
+		if (amount < 0) {
+			return false; // can not deposit a negative amount
+		}
+		lock.writeLock().lock();
+		try {
+			write(accountBalance + amount);
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public long balance() {
+		for (int i = 0; i < OPTIMISTIC_TRIES; i++) {
+			long before = sequence;
+			if ((before & 1) == 0) {
+				long balance = accountBalance;
+				if (sequence == before) {
+					return balance;
+				}
+			}
+		}
+		lock.readLock().lock();
+		try {
+			return accountBalance;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Transfer holding the write locks of both accounts, taken in the same
+	 * global order as {@link OrderedLockTransfer}.
+	 */
+	public static boolean transfer(OptimisticBankAccount from, long amount,
+			OptimisticBankAccount to) {
+		if (amount < 0) {
+			return false;
+		}
+		if (from == to) {
+			return amount <= from.balance();
+		}
+		OptimisticBankAccount first = compare(from, to) <= 0 ? from : to;
+		OptimisticBankAccount second = first == from ? to : from;
+
+		OrderedLockTransfer.lockBoth(first.lock.writeLock(),
+				second.lock.writeLock());
+		try {
+			if (amount > from.accountBalance) {
+				return false;
+			}
+			// both sequences stay odd until both balances are written, so a
+			// reader of the total can not see one side of the transfer only
+			from.sequence++;
+			to.sequence++;
+			from.accountBalance -= amount;
+			to.accountBalance += amount;
+			from.sequence++;
+			to.sequence++;
+			return true;
+		} finally {
+			second.lock.writeLock().unlock();
+			first.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Sum of the balances at a single point in time, so money in flight in a
+	 * transfer is never counted twice or missed. Optimistic like
+	 * {@link #balance()}, falling back to the read locks of all accounts.
+	 */
+	public static long totalBalance(OptimisticBankAccount... accounts) {
+		long[] sequences = new long[accounts.length];
+		for (int i = 0; i < OPTIMISTIC_TRIES; i++) {
+			if (readSequences(accounts, sequences)) {
+				long total = 0;
+				for (OptimisticBankAccount account : accounts) {
+					total += account.accountBalance;
+				}
+				if (validate(accounts, sequences)) {
+					return total;
+				}
+			}
+		}
+
+		OptimisticBankAccount[] ordered = accounts.clone();
+		Arrays.sort(ordered, LOCK_ORDER);
+		int locked = 0;
+		try {
+			long total = 0;
+			for (; locked < ordered.length; locked++) {
+				ordered[locked].lock.readLock().lock();
+				total += ordered[locked].accountBalance;
+			}
+			return total;
+		} finally {
+			for (int i = 0; i < locked; i++) {
+				ordered[i].lock.readLock().unlock();
+			}
+		}
+	}
+
+	private static boolean readSequences(OptimisticBankAccount[] accounts,
+			long[] sequences) {
+		for (int i = 0; i < accounts.length; i++) {
+			sequences[i] = accounts[i].sequence;
+			if ((sequences[i] & 1) != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean validate(OptimisticBankAccount[] accounts,
+			long[] sequences) {
+		for (int i = 0; i < accounts.length; i++) {
+			if (accounts[i].sequence != sequences[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Must hold the write lock.
+	 */
+	private void write(long balance) {
+		sequence++;
+		accountBalance = balance;
+		sequence++;
+	}
+
+	/**
+	 * Global lock order: accountNumber, then identity.
+	 */
+	static int compare(OptimisticBankAccount a, OptimisticBankAccount b) {
+		if (a.accountNumber != b.accountNumber) {
+			return a.accountNumber < b.accountNumber ? -1 : 1;
+		}
+		int ha = System.identityHashCode(a);
+		int hb = System.identityHashCode(b);
+		return ha < hb ? -1 : (ha == hb ? 0 : 1);
+	}
+
+	public int getAccountNumber() {
+		return accountNumber;
+	}
+
+}
@@ -0,0 +1,203 @@
+package com.cerner.devcon.bank;
+
+import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Transfer engine that avoids the deadlock in {@link BankAccountTransfer}.
+ *
+ * Locks are always taken in a global order: by accountNumber first, then by
+ * identity hash for accounts that share a number. The second lock is only
+ * tried, never waited on, so even two accounts that compare equal can not
+ * deadlock. A failed try releases the first lock and backs off for a short
+ * random time before trying again.
+ */
+public class OrderedLockTransfer {
+
+	private static final long MIN_BACKOFF_NANOS = 1000;
+
+	private static final long MAX_BACKOFF_NANOS = 1000000;
+
+	private static final ThreadLocal<Random> random = new ThreadLocal<Random>() {
+		@Override
+		protected Random initialValue() {
+			return new Random();
+		}
+	};
+
+	/**
+	 * Transfer by locking both accounts in global order and then withdrawing
+	 * and depositing funds.
+	 *
+	 * @param from
+	 * @param amount
+	 * @param to
+	 * @return true if the funds were moved, false if from did not have enough
+	 *         or the amount is negative
+	 */
+	public static boolean transfer(BankAccount from, long amount,
+			BankAccount to) {
+		if (amount < 0) {
+			// BankAccount.withdraw would credit from with a negative amount
+			return false;
+		}
+		if (from == to) {
+			from.lock.lock();
+			try {
+				return apply(from, amount, to);
+			} finally {
+				from.lock.unlock();
+			}
+		}
+
+		BankAccount first = compare(from, to) <= 0 ? from : to;
+		BankAccount second = first == from ? to : from;
+
+		lockBoth(first, second);
+		try {
+			return apply(from, amount, to);
+		} finally {
+			second.lock.unlock();
+			first.lock.unlock();
+		}
+	}
+
+	/**
+	 * Apply a batch of transfers, taking the locks once per run of
+	 * transfers on the same pair of accounts rather than once per transfer.
+	 *
+	 * Transfers are applied in the order they were given, so a transfer can
+	 * rely on the funds an earlier one moved. Consecutive transfers touching
+	 * the same two accounts, in either direction, share one locking of the
+	 * pair; the pair is unlocked when the next transfer touches another.
+	 * Only two locks are ever held at a time.
+	 *
+	 * @param transfers
+	 * @return the result of each transfer, in the iteration order of the
+	 *         collection
+	 */
+	public static boolean[] transferAll(Collection<Transfer> transfers) {
+		boolean[] results = new boolean[transfers.size()];
+		// the pair locked for the current run, null when none is
+		BankAccount first = null;
+		BankAccount second = null;
+		int index = 0;
+		try {
+			for (Transfer txfr : transfers) {
+				if (txfr.first != first || txfr.second != second) {
+					unlockPair(first, second);
+					first = null;
+					lockPair(txfr.first, txfr.second);
+					first = txfr.first;
+					second = txfr.second;
+				}
+				results[index++] = apply(txfr.from, txfr.amount, txfr.to);
+			}
+		} finally {
+			unlockPair(first, second);
+		}
+		return results;
+	}
+
+	private static void lockPair(BankAccount first, BankAccount second) {
+		if (first == second) {
+			first.lock.lock();
+		} else {
+			lockBoth(first, second);
+		}
+	}
+
+	private static void unlockPair(BankAccount first, BankAccount second) {
+		if (first == null) {
+			return;
+		}
+		if (first != second) {
+			second.lock.unlock();
+		}
+		first.lock.unlock();
+	}
+
+	/**
+	 * Move the funds. Both accounts must be locked.
+	 */
+	private static boolean apply(BankAccount from, long amount, BankAccount to) {
+		if (amount < 0) {
+			return false;
+		}
+		if (from == to) {
+			return amount <= from.accountBalance;
+		}
+		if (from.withdraw(amount)) {
+			to.deposit(amount);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Global lock order: accountNumber, then identity.
+	 */
+	static int compare(BankAccount a, BankAccount b) {
+		if (a.accountNumber != b.accountNumber) {
+			return a.accountNumber < b.accountNumber ? -1 : 1;
+		}
+		int ha = System.identityHashCode(a);
+		int hb = System.identityHashCode(b);
+		return ha < hb ? -1 : (ha == hb ? 0 : 1);
+	}
+
+	static void lockBoth(BankAccount first, BankAccount second) {
+		lockBoth(first.lock, second.lock);
+	}
+
+	/**
+	 * Block on the first lock, try the second. On failure release the first
+	 * and back off so the other thread can finish.
+	 */
+	static void lockBoth(Lock first, Lock second) {
+		long backoff = MIN_BACKOFF_NANOS;
+		while (true) {
+			first.lock();
+			if (second.tryLock()) {
+				return;
+			}
+			first.unlock();
+			LockSupport.parkNanos(1 + (long) (random.get().nextDouble() * backoff));
+			backoff = Math.min(backoff * 2, MAX_BACKOFF_NANOS);
+		}
+	}
+
+	public static class Transfer {
+		private final BankAccount from;
+		private final long amount;
+		private final BankAccount to;
+
+		// the two accounts in lock order
+		private final BankAccount first;
+		private final BankAccount second;
+
+		public Transfer(BankAccount from, long amount, BankAccount to) {
+			this.from = from;
+			this.amount = amount;
+			this.to = to;
+			boolean ordered = compare(from, to) <= 0;
+			this.first = ordered ? from : to;
+			this.second = ordered ? to : from;
+		}
+
+		public BankAccount getFrom() {
+			return from;
+		}
+
+		public long getAmount() {
+			return amount;
+		}
+
+		public BankAccount getTo() {
+			return to;
+		}
+	}
+
+}
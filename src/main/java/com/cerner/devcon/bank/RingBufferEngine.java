@@ -0,0 +1,353 @@
+package com.cerner.devcon.bank;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single writer engine: one thread owns all the balances.
+ *
+ * Callers never touch the balances. They claim a slot in a preallocated ring
+ * buffer, write the command into it as primitives and publish it. The
+ * consumer thread applies published commands in order to a primitive balance
+ * array, with no locks and no contention on the data. Completions for a run
+ * of commands are called together at the end of the run, before the slots
+ * are handed back to producers.
+ *
+ * The blocking methods of {@link AccountEngine} wait for their own
+ * completion; the methods taking a {@link Completion} return as soon as the
+ * command is published.
+ *
+ * Closing is decided on the same atomic as claiming a sequence: every
+ * command claimed before {@link #close()} is applied and completed before
+ * the consumer stops, and every later one is refused.
+ */
+public class RingBufferEngine implements AccountEngine {
+
+	public static final int DEFAULT_RING_SIZE = 8192;
+
+	/**
+	 * Called on the consumer thread once the command has been applied. For a
+	 * balance request, balance is the balance; otherwise it is the balance of
+	 * the (from) account after the command.
+	 */
+	public interface Completion {
+		void complete(boolean success, long balance);
+	}
+
+	private static final int DEPOSIT = 0;
+	private static final int WITHDRAW = 1;
+	private static final int TRANSFER = 2;
+	private static final int BALANCE = 3;
+
+	private static final int SPIN_TRIES = 100;
+	private static final int YIELD_TRIES = 200;
+	private static final long PARK_NANOS = 100000;
+
+	private final long[] balances;
+
+	// ring slots, written by producers before publishing
+	private final int[] commands;
+	private final int[] accounts;
+	private final int[] targets;
+	private final long[] amounts;
+	private final Completion[] completions;
+
+	// results, only touched by the consumer
+	private final boolean[] results;
+	private final long[] replies;
+
+	// sequence published in each slot
+	private final AtomicLongArray published;
+	private final int mask;
+
+	// set in claims once closed
+	private static final long CLOSED = 1L << 62;
+
+	// next sequence to claim, and CLOSED
+	private final AtomicLong claims = new AtomicLong();
+
+	// last sequence whose slot can be reused
+	private volatile long consumed = -1;
+
+	// sequences below this were claimed before close, the consumer stops
+	// after them
+	private volatile long limit = Long.MAX_VALUE;
+
+	private volatile boolean sleeping;
+
+	private final Thread consumer;
+
+	private final ThreadLocal<Waiter> waiters = new ThreadLocal<Waiter>() {
+		@Override
+		protected Waiter initialValue() {
+			return new Waiter();
+		}
+	};
+
+	public RingBufferEngine(int capacity) {
+		this(capacity, DEFAULT_RING_SIZE);
+	}
+
+	/**
+	 * @param capacity
+	 *            number of accounts, numbered 0 to capacity - 1
+	 * @param ringSize
+	 *            number of slots, rounded up to a power of two
+	 */
+	public RingBufferEngine(int capacity, int ringSize) {
+		if (capacity < 0 || ringSize < 1) {
+			throw new IllegalArgumentException("capacity " + capacity
+					+ ", ring size " + ringSize);
+		}
+		int size = Integer.highestOneBit(ringSize);
+		if (size < ringSize) {
+			size <<= 1;
+		}
+		this.balances = new long[capacity];
+		this.commands = new int[size];
+		this.accounts = new int[size];
+		this.targets = new int[size];
+		this.amounts = new long[size];
+		this.completions = new Completion[size];
+		this.results = new boolean[size];
+		this.replies = new long[size];
+		this.published = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			published.set(i, -1);
+		}
+		this.mask = size - 1;
+
+		consumer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				consume();
+			}
+		}, "ring-buffer-engine");
+		consumer.setDaemon(true);
+		consumer.start();
+	}
+
+	public void deposit(int accountNumber, long amount, Completion completion) {
+		publish(DEPOSIT, accountNumber, accountNumber, amount, completion);
+	}
+
+	public void withdraw(int accountNumber, long amount, Completion completion) {
+		publish(WITHDRAW, accountNumber, accountNumber, amount, completion);
+	}
+
+	public void transfer(int from, long amount, int to, Completion completion) {
+		publish(TRANSFER, from, to, amount, completion);
+	}
+
+	public void balance(int accountNumber, Completion completion) {
+		publish(BALANCE, accountNumber, accountNumber, 0, completion);
+	}
+
+	@Override
+	public boolean deposit(int accountNumber, long amount) {
+		Waiter waiter = waiters.get().reset();
+		deposit(accountNumber, amount, waiter);
+		return waiter.await().success;
+	}
+
+	@Override
+	public boolean withdraw(int accountNumber, long amount) {
+		Waiter waiter = waiters.get().reset();
+		withdraw(accountNumber, amount, waiter);
+		return waiter.await().success;
+	}
+
+	@Override
+	public boolean transfer(int from, long amount, int to) {
+		Waiter waiter = waiters.get().reset();
+		transfer(from, amount, to, waiter);
+		return waiter.await().success;
+	}
+
+	@Override
+	public long balance(int accountNumber) {
+		Waiter waiter = waiters.get().reset();
+		balance(accountNumber, waiter);
+		return waiter.await().balance;
+	}
+
+	public int capacity() {
+		return balances.length;
+	}
+
+	/**
+	 * Refuse new commands, apply and complete the ones already claimed and
+	 * stop the consumer thread.
+	 */
+	public void close() throws InterruptedException {
+		long c;
+		do {
+			c = claims.get();
+		} while ((c & CLOSED) == 0 && !claims.compareAndSet(c, c | CLOSED));
+		limit = c & ~CLOSED;
+		LockSupport.unpark(consumer);
+		consumer.join();
+	}
+
+	private void publish(int command, int account, int target, long amount,
+			Completion completion) {
+		if (account < 0 || account >= balances.length || target < 0
+				|| target >= balances.length) {
+			throw new IllegalArgumentException("unknown account "
+					+ (account < 0 || account >= balances.length ? account
+							: target));
+		}
+		long sequence;
+		do {
+			sequence = claims.get();
+			if ((sequence & CLOSED) != 0) {
+				throw new IllegalStateException("engine is closed");
+			}
+		} while (!claims.compareAndSet(sequence, sequence + 1));
+		// the consumer runs until this sequence is applied, so the slot is
+		// freed and the completion called even if close() comes now
+		// wait until the consumer has freed the slot from the last lap
+		for (int tries = 0; sequence - commands.length > consumed; tries++) {
+			idle(tries);
+		}
+		int i = (int) sequence & mask;
+		commands[i] = command;
+		accounts[i] = account;
+		targets[i] = target;
+		amounts[i] = amount;
+		completions[i] = completion;
+		published.lazySet(i, sequence);
+
+		if (sleeping) {
+			LockSupport.unpark(consumer);
+		}
+	}
+
+	private void consume() {
+		long next = 0;
+		int tries = 0;
+		while (true) {
+			long end = next;
+			while (end - next < commands.length
+					&& published.get((int) end & mask) == end) {
+				apply((int) end & mask);
+				end++;
+			}
+
+			if (end == next) {
+				if (next >= limit) {
+					return;
+				}
+				if (tries++ < YIELD_TRIES) {
+					idle(tries);
+				} else {
+					sleeping = true;
+					// check again so a publish racing with going to sleep is
+					// not missed; the park is timed, so a lost unpark only
+					// costs latency
+					if (published.get((int) next & mask) != next
+							&& next < limit) {
+						LockSupport.parkNanos(PARK_NANOS);
+					}
+					sleeping = false;
+				}
+				continue;
+			}
+			tries = 0;
+
+			// reply for the whole run, then hand the slots back
+			for (long s = next; s < end; s++) {
+				int i = (int) s & mask;
+				Completion completion = completions[i];
+				completions[i] = null;
+				if (completion != null) {
+					try {
+						completion.complete(results[i], replies[i]);
+					} catch (RuntimeException e) {
+						consumer.getUncaughtExceptionHandler()
+								.uncaughtException(consumer, e);
+					}
+				}
+			}
+			consumed = end - 1;
+			next = end;
+		}
+	}
+
+	private void apply(int i) {
+		int account = accounts[i];
+		long amount = amounts[i];
+		boolean success;
+		switch (commands[i]) {
+		case DEPOSIT:
+			success = amount >= 0;
+			if (success) {
+				balances[account] += amount;
+			}
+			break;
+		case WITHDRAW:
+			success = amount >= 0 && amount <= balances[account];
+			if (success) {
+				balances[account] -= amount;
+			}
+			break;
+		case TRANSFER:
+			success = amount >= 0 && amount <= balances[account];
+			if (success) {
+				balances[account] -= amount;
+				balances[targets[i]] += amount;
+			}
+			break;
+		default:
+			success = true;
+		}
+		results[i] = success;
+		replies[i] = balances[account];
+	}
+
+	private static void idle(int tries) {
+		if (tries < SPIN_TRIES) {
+			return;
+		} else if (tries < YIELD_TRIES) {
+			Thread.yield();
+		} else {
+			LockSupport.parkNanos(1000);
+		}
+	}
+
+	/**
+	 * Completion used by the blocking methods. One per calling thread,
+	 * reused for every call.
+	 */
+	private static final class Waiter implements Completion {
+		private final Thread thread = Thread.currentThread();
+		private volatile boolean done;
+		boolean success;
+		long balance;
+
+		Waiter reset() {
+			done = false;
+			return this;
+		}
+
+		@Override
+		public void complete(boolean success, long balance) {
+			this.success = success;
+			this.balance = balance;
+			done = true;
+			LockSupport.unpark(thread);
+		}
+
+		Waiter await() {
+			for (int tries = 0; !done; tries++) {
+				if (tries < SPIN_TRIES) {
+					continue;
+				}
+				LockSupport.park(this);
+			}
+			return this;
+		}
+	}
+
+}
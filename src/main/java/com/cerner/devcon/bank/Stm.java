@@ -0,0 +1,198 @@
+package com.cerner.devcon.bank;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Minimal software transactional memory over long values.
+ *
+ * A transaction samples a global version clock when it starts. Every read
+ * checks that the ref has not been committed since then, so all reads of a
+ * transaction come from one consistent snapshot. Writes are buffered and
+ * only published at commit, after the written refs have been locked and the
+ * reads validated again. Any conflict aborts the transaction, which is then
+ * run again from the start.
+ *
+ * Reads never take a lock, so read only transactions such as audits do not
+ * block writers; they are only retried when a writer commits under them.
+ */
+public class Stm {
+
+	private static final AtomicLong clock = new AtomicLong();
+
+	private static final long MAX_BACKOFF_NANOS = 100000;
+
+	/**
+	 * Block of code to run atomically. It may be run more than once, so it
+	 * should not have side effects outside the refs it reads and writes.
+	 */
+	public interface Atomic<T> {
+		T run(Transaction txn);
+	}
+
+	/**
+	 * Run the block as a transaction, retrying until it commits.
+	 */
+	public static <T> T atomic(Atomic<T> block) {
+		long backoff = 0;
+		while (true) {
+			Transaction txn = new Transaction(clock.get());
+			try {
+				T result = block.run(txn);
+				if (txn.commit()) {
+					return result;
+				}
+			} catch (Conflict e) {
+				// another transaction committed under this one, try again
+			}
+			if (backoff > 0) {
+				LockSupport.parkNanos(backoff);
+			}
+			backoff = Math.min(backoff * 2 + 1, MAX_BACKOFF_NANOS);
+		}
+	}
+
+	/**
+	 * Transactional reference to a long.
+	 */
+	public static final class Ref {
+
+		private static final AtomicReferenceFieldUpdater<Ref, Transaction> OWNER = AtomicReferenceFieldUpdater
+				.newUpdater(Ref.class, Transaction.class, "owner");
+
+		private volatile Entry entry;
+
+		// transaction that is committing to this ref, if any
+		private volatile Transaction owner;
+
+		public Ref(long value) {
+			this.entry = new Entry(value, 0);
+		}
+
+		/**
+		 * Last committed value, read outside of any transaction.
+		 */
+		public long get() {
+			return entry.value;
+		}
+
+	}
+
+	/**
+	 * Committed value together with the clock version that committed it.
+	 */
+	private static final class Entry {
+		final long value;
+		final long version;
+
+		Entry(long value, long version) {
+			this.value = value;
+			this.version = version;
+		}
+	}
+
+	/**
+	 * Thrown to abort a transaction as soon as it reads an inconsistent
+	 * value. Shared and without a stack trace, since it is only used for
+	 * control flow.
+	 */
+	private static final class Conflict extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		static final Conflict INSTANCE = new Conflict();
+
+		@Override
+		public synchronized Throwable fillInStackTrace() {
+			return this;
+		}
+	}
+
+	public static final class Transaction {
+
+		private final long readVersion;
+
+		private final List<Ref> reads = new ArrayList<Ref>(4);
+
+		private final List<Ref> writes = new ArrayList<Ref>(4);
+
+		private long[] values = new long[4];
+
+		private Transaction(long readVersion) {
+			this.readVersion = readVersion;
+		}
+
+		public long read(Ref ref) {
+			int i = writes.indexOf(ref);
+			if (i >= 0) {
+				return values[i];
+			}
+			// check the lock before the entry: a writer that has not
+			// published yet either holds the lock or will publish with a
+			// version newer than ours
+			if (ref.owner != null) {
+				throw Conflict.INSTANCE;
+			}
+			Entry entry = ref.entry;
+			if (entry.version > readVersion) {
+				throw Conflict.INSTANCE;
+			}
+			reads.add(ref);
+			return entry.value;
+		}
+
+		public void write(Ref ref, long value) {
+			int i = writes.indexOf(ref);
+			if (i < 0) {
+				i = writes.size();
+				writes.add(ref);
+				if (i == values.length) {
+					long[] grown = new long[i * 2];
+					System.arraycopy(values, 0, grown, 0, i);
+					values = grown;
+				}
+			}
+			values[i] = value;
+		}
+
+		private boolean commit() {
+			if (writes.isEmpty()) {
+				// every read was already checked against the snapshot
+				return true;
+			}
+			int locked = 0;
+			try {
+				for (; locked < writes.size(); locked++) {
+					if (!Ref.OWNER.compareAndSet(writes.get(locked), null,
+							this)) {
+						return false;
+					}
+				}
+				long writeVersion = clock.incrementAndGet();
+				if (writeVersion != readVersion + 1) {
+					// something else committed since the start, make sure
+					// it was not something we read
+					for (Ref ref : reads) {
+						Transaction owner = ref.owner;
+						if ((owner != null && owner != this)
+								|| ref.entry.version > readVersion) {
+							return false;
+						}
+					}
+				}
+				for (int i = 0; i < writes.size(); i++) {
+					writes.get(i).entry = new Entry(values[i], writeVersion);
+				}
+				return true;
+			} finally {
+				for (int i = 0; i < locked; i++) {
+					writes.get(i).owner = null;
+				}
+			}
+		}
+
+	}
+
+}
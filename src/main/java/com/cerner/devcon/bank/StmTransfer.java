@@ -0,0 +1,52 @@
+package com.cerner.devcon.bank;
+
+import com.cerner.devcon.bank.Stm.Atomic;
+import com.cerner.devcon.bank.Stm.Transaction;
+
+/**
+ * Transfers between transactional accounts.
+ *
+ * Same shape as {@link BankAccountTransfer}, but instead of locking both
+ * accounts the withdraw and deposit run in one optimistic transaction that
+ * is validated at commit and retried on conflict. No locks are held while
+ * the transfer runs, so there is nothing to deadlock on.
+ */
+public class StmTransfer {
+
+	/**
+	 * @param from
+	 * @param amount
+	 * @param to
+	 * @return true if the funds were moved, false if from did not have enough
+	 */
+	public static boolean transfer(final TransactionalBankAccount from,
+			final long amount, final TransactionalBankAccount to) {
+		return Stm.atomic(new Atomic<Boolean>() {
+			@Override
+			public Boolean run(Transaction txn) {
+				if (from.withdraw(txn, amount)) {
+					return to.deposit(txn, amount);
+				}
+				return false;
+			}
+		});
+	}
+
+	/**
+	 * Sum of the balances as of a single point in time. Read only, so it
+	 * never blocks a transfer; it is retried if one commits under it.
+	 */
+	public static long totalBalance(final TransactionalBankAccount... accounts) {
+		return Stm.atomic(new Atomic<Long>() {
+			@Override
+			public Long run(Transaction txn) {
+				long total = 0;
+				for (TransactionalBankAccount account : accounts) {
+					total += account.balance(txn);
+				}
+				return total;
+			}
+		});
+	}
+
+}
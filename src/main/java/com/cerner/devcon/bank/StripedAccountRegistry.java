@@ -0,0 +1,325 @@
+package com.cerner.devcon.bank;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry for a large number of accounts keyed by accountNumber.
+ *
+ * Balances are minor units in a {@link BalanceStore} indexed by
+ * accountNumber, so there is no object per account. The store is a primitive
+ * array on the heap by default, or a {@link MappedLedger} to keep balances
+ * off heap and on disk. A fixed array of lock stripes guards them: each
+ * account maps to one stripe and many accounts share it, which keeps the
+ * number of locks bounded no matter how many accounts there are. Transfers
+ * lock the stripes of both accounts in stripe order, so they can not
+ * deadlock.
+ *
+ * With a {@link MappedJournal}, every change is appended to the journal
+ * under the account's stripe lock before it is applied. {@link #snapshot}
+ * then writes a {@link BalanceSnapshot} and drops the journal segments it
+ * covers, and {@link #recover} rebuilds the registry from the latest
+ * snapshot and the journal tail.
+ */
+public class StripedAccountRegistry implements AccountEngine {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(StripedAccountRegistry.class);
+
+	public static final int DEFAULT_STRIPES = 1024;
+
+	private final BalanceStore balances;
+
+	private final ReentrantLock[] stripes;
+
+	private final int stripeMask;
+
+	private final MappedJournal journal;
+
+	/**
+	 * @param capacity
+	 *            number of accounts, numbered 0 to capacity - 1
+	 */
+	public StripedAccountRegistry(int capacity) {
+		this(capacity, DEFAULT_STRIPES);
+	}
+
+	/**
+	 * @param capacity
+	 *            number of accounts, numbered 0 to capacity - 1
+	 * @param stripeCount
+	 *            number of locks, rounded up to a power of two
+	 */
+	public StripedAccountRegistry(int capacity, int stripeCount) {
+		this(new HeapBalanceStore(capacity), stripeCount);
+	}
+
+	/**
+	 * @param balances
+	 *            storage for the balances, one slot per account
+	 * @param stripeCount
+	 *            number of locks, rounded up to a power of two
+	 */
+	public StripedAccountRegistry(BalanceStore balances, int stripeCount) {
+		this(balances, stripeCount, null);
+	}
+
+	/**
+	 * @param balances
+	 *            storage for the balances, one slot per account
+	 * @param stripeCount
+	 *            number of locks, rounded up to a power of two
+	 * @param journal
+	 *            journal every change is appended to, or null
+	 */
+	public StripedAccountRegistry(BalanceStore balances, int stripeCount,
+			MappedJournal journal) {
+		if (stripeCount < 1) {
+			throw new IllegalArgumentException("stripes " + stripeCount);
+		}
+		int size = Integer.highestOneBit(stripeCount);
+		if (size < stripeCount) {
+			size <<= 1;
+		}
+		this.balances = balances;
+		this.stripes = new ReentrantLock[size];
+		for (int i = 0; i < size; i++) {
+			stripes[i] = new ReentrantLock();
+		}
+		this.stripeMask = size - 1;
+		this.journal = journal;
+	}
+
+	/**
+	 * Rebuild a journaled registry: load the snapshot, if there is one, in
+	 * parallel chunks, then replay the journal events after it.
+	 *
+	 * @param loader
+	 *            runs the snapshot chunks; null loads in the calling thread
+	 * @param chunks
+	 *            number of pieces the snapshot is loaded in
+	 */
+	public static StripedAccountRegistry recover(File snapshot,
+			MappedJournal journal, int capacity, int stripeCount,
+			ExecutorService loader, int chunks) throws IOException {
+		final BalanceStore balances = new HeapBalanceStore(capacity);
+		long position = snapshot.exists() ? BalanceSnapshot.load(snapshot,
+				balances, loader, chunks) : 0;
+		journal.replay(position, new MappedJournal.Visitor() {
+			@Override
+			public void event(int type, int accountNumber, long amount) {
+				balances.add(accountNumber,
+						type == MappedJournal.DEPOSIT ? amount : -amount);
+			}
+		});
+		return new StripedAccountRegistry(balances, stripeCount, journal);
+	}
+
+	@Override
+	public boolean deposit(int accountNumber, long amount) {
+		if (amount < 0) {
+			return false; // can not deposit a negative amount
+		}
+		ReentrantLock lock = stripes[stripeOf(accountNumber)];
+		lock.lock();
+		try {
+			journal(MappedJournal.DEPOSIT, accountNumber, amount);
+			balances.set(accountNumber, balances.get(accountNumber) + amount);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean withdraw(int accountNumber, long amount) {
+		if (amount < 0) {
+			return false; // can not withdraw a negative amount
+		}
+		ReentrantLock lock = stripes[stripeOf(accountNumber)];
+		lock.lock();
+		try {
+			long balance = balances.get(accountNumber);
+			if (amount > balance) {
+				// there are not enough funds in the account
+				return false;
+			}
+			journal(MappedJournal.WITHDRAW, accountNumber, amount);
+			balances.set(accountNumber, balance - amount);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Transfer by locking the stripes of both accounts, lowest stripe first.
+	 * Accounts on the same stripe only take one lock.
+	 */
+	@Override
+	public boolean transfer(int from, long amount, int to) {
+		if (amount < 0) {
+			return false;
+		}
+		int a = stripeOf(from);
+		int b = stripeOf(to);
+		ReentrantLock first = stripes[Math.min(a, b)];
+		ReentrantLock second = stripes[Math.max(a, b)];
+
+		first.lock();
+		if (second != first) {
+			second.lock();
+		}
+		try {
+			long balance = balances.get(from);
+			if (amount > balance) {
+				return false;
+			}
+			journal(MappedJournal.WITHDRAW, from, amount);
+			journal(MappedJournal.DEPOSIT, to, amount);
+			balances.set(from, balance - amount);
+			balances.set(to, balances.get(to) + amount);
+			return true;
+		} finally {
+			if (second != first) {
+				second.unlock();
+			}
+			first.unlock();
+		}
+	}
+
+	@Override
+	public long balance(int accountNumber) {
+		ReentrantLock lock = stripes[stripeOf(accountNumber)];
+		lock.lock();
+		try {
+			return balances.get(accountNumber);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int capacity() {
+		return balances.capacity();
+	}
+
+	/**
+	 * Force the journal, making every change so far durable.
+	 */
+	public void force() {
+		if (journal != null) {
+			synchronized (journal) {
+				journal.force();
+			}
+		}
+	}
+
+	/**
+	 * Write a snapshot of all the balances to the file and delete the
+	 * journal segments it covers.
+	 *
+	 * Every stripe is locked while the balances are copied and the journal
+	 * position is read, which pauses the registry for the copy but not for
+	 * forcing the journal or writing the file.
+	 *
+	 * @return the journal position the snapshot covers up to
+	 */
+	public long snapshot(File file) throws IOException {
+		int capacity = balances.capacity();
+		long[] copy = new long[capacity];
+		long position;
+		for (ReentrantLock lock : stripes) {
+			lock.lock();
+		}
+		try {
+			for (int i = 0; i < capacity; i++) {
+				copy[i] = balances.get(i);
+			}
+			position = 0;
+			if (journal != null) {
+				synchronized (journal) {
+					position = journal.position();
+				}
+			}
+		} finally {
+			for (int i = stripes.length - 1; i >= 0; i--) {
+				stripes[i].unlock();
+			}
+		}
+		// the copied balances must not be ahead of the durable journal
+		force();
+		BalanceSnapshot.write(file, copy, capacity, position);
+		if (journal != null) {
+			synchronized (journal) {
+				journal.deleteBefore(position);
+			}
+		}
+		return position;
+	}
+
+	/**
+	 * Snapshot to the file every period. Failures are logged and the next
+	 * snapshot is still taken.
+	 *
+	 * @return the scheduled snapshots, to cancel them
+	 */
+	public ScheduledFuture<?> scheduleSnapshots(
+			ScheduledExecutorService executor, final File file, long period,
+			TimeUnit unit) {
+		return executor.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					snapshot(file);
+				} catch (Exception e) {
+					// an exception escaping would cancel the later runs
+					log.error("snapshot to " + file + " failed", e);
+				}
+			}
+		}, period, period, unit);
+	}
+
+	public int stripeCount() {
+		return stripes.length;
+	}
+
+	/**
+	 * Append to the journal, if there is one. The journal has a single
+	 * writer, so appends from different stripes take turns.
+	 */
+	private void journal(int type, int accountNumber, long amount) {
+		if (journal == null) {
+			return;
+		}
+		synchronized (journal) {
+			try {
+				journal.append(type, accountNumber, amount);
+			} catch (IOException e) {
+				throw new IllegalStateException("can not append to journal "
+						+ journal.getDirectory(), e);
+			}
+		}
+	}
+
+	/**
+	 * Scramble the account number before masking so that accounts used in
+	 * regular strides still spread across the stripes.
+	 */
+	int stripeOf(int accountNumber) {
+		if (accountNumber < 0 || accountNumber >= balances.capacity()) {
+			throw new IllegalArgumentException("unknown account "
+					+ accountNumber);
+		}
+		int h = accountNumber * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & stripeMask;
+	}
+
+}
@@ -0,0 +1,79 @@
+package com.cerner.devcon.bank;
+
+import com.cerner.devcon.bank.Stm.Atomic;
+import com.cerner.devcon.bank.Stm.Transaction;
+
+/**
+ * BankAccount whose balance is a transactional ref.
+ *
+ * Each method runs in its own transaction. The variants that take a
+ * Transaction join the caller's transaction instead, so several accounts can
+ * be changed atomically as in {@link StmTransfer}.
+ */
+public class TransactionalBankAccount {
+
+	int accountNumber;
+
+	final Stm.Ref accountBalance;
+
+	public TransactionalBankAccount(int accountNumber, long balance) {
+		this.accountNumber = accountNumber;
+		this.accountBalance = new Stm.Ref(balance);
+	}
+
+	// to withdraw funds from the account
+	public boolean withdraw(final long amount) {
+		return Stm.atomic(new Atomic<Boolean>() {
+			@Override
+			public Boolean run(Transaction txn) {
+				return withdraw(txn, amount);
+			}
+		});
+	}
+
+	public boolean withdraw(Transaction txn, long amount) {
+		if (amount < 0) {
+			return false; // can not withdraw a negative amount
+		}
+		long balance = txn.read(accountBalance);
+		if (amount > balance) {
+			// there are not enough funds in the account
+			return false;
+		}
+		txn.write(accountBalance, balance - amount);
+		return true;
+	}
+
+	public boolean deposit(final long amount) {
+		return Stm.atomic(new Atomic<Boolean>() {
+			@Override
+			public Boolean run(Transaction txn) {
+				return deposit(txn, amount);
+			}
+		});
+	}
+
+	public boolean deposit(Transaction txn, long amount) {
+		if (amount < 0) {
+			return false; // can not deposit a negative amount
+		}
+		txn.write(accountBalance, txn.read(accountBalance) + amount);
+		return true;
+	}
+
+	/**
+	 * Last committed balance. Never blocks and is never blocked.
+	 */
+	public long balance() {
+		return accountBalance.get();
+	}
+
+	public long balance(Transaction txn) {
+		return txn.read(accountBalance);
+	}
+
+	public int getAccountNumber() {
+		return accountNumber;
+	}
+
+}
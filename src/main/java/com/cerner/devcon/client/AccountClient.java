@@ -0,0 +1,29 @@
+package com.cerner.devcon.client;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Java client of an account engine, with CompletableFutures instead of Scala
+ * futures.
+ *
+ * The futures are completed on the thread that receives the reply, so
+ * dependent stages that do real work should use the async variants with an
+ * executor of the caller's.
+ *
+ * Amounts and balances are longs of minor units (cents).
+ */
+public interface AccountClient {
+
+	/**
+	 * @return whether the deposit was done
+	 */
+	CompletableFuture<Boolean> deposit(long amount);
+
+	/**
+	 * @return whether the withdraw was done
+	 */
+	CompletableFuture<Boolean> withdraw(long amount);
+
+	CompletableFuture<Long> balance();
+
+}
@@ -0,0 +1,70 @@
+package com.cerner.devcon.client;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import akka.actor.ActorRef;
+import akka.util.Timeout;
+
+import com.cerner.devcon.actor.BankAccount;
+import com.cerner.devcon.actor.ReplyAggregator;
+
+/**
+ * AccountClient over an account actor taking the
+ * {@link BankAccount} messages. Requests go through a shared
+ * {@link ReplyAggregator} rather than an ask each.
+ */
+public class ActorAccountClient implements AccountClient {
+
+	private static final Function<Object, Boolean> DONE = new Function<Object, Boolean>() {
+		@Override
+		public Boolean apply(Object status) {
+			return status == BankAccount.TransactionStatus.DONE;
+		}
+	};
+
+	private static final Function<Object, Long> AMOUNT = new Function<Object, Long>() {
+		@Override
+		public Long apply(Object balance) {
+			return ((BankAccount.Balance) balance).getAmount();
+		}
+	};
+
+	private final ActorRef aggregator;
+
+	private final ActorRef account;
+
+	private final Timeout timeout;
+
+	/**
+	 * @param aggregator
+	 *            a ReplyAggregator, which can be shared by many clients
+	 */
+	public ActorAccountClient(ActorRef aggregator, ActorRef account,
+			Timeout timeout) {
+		this.aggregator = aggregator;
+		this.account = account;
+		this.timeout = timeout;
+	}
+
+	@Override
+	public CompletableFuture<Boolean> deposit(long amount) {
+		return ask(BankAccount.Deposit.of(amount)).thenApply(DONE);
+	}
+
+	@Override
+	public CompletableFuture<Boolean> withdraw(long amount) {
+		return ask(BankAccount.Withdraw.of(amount)).thenApply(DONE);
+	}
+
+	@Override
+	public CompletableFuture<Long> balance() {
+		return ask(BankAccount.BALANCE_REQUEST).thenApply(AMOUNT);
+	}
+
+	private CompletableFuture<Object> ask(Object msg) {
+		return CompletableFutures.of(ReplyAggregator.ask(aggregator, account,
+				msg, timeout));
+	}
+
+}
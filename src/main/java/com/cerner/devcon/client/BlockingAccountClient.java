@@ -0,0 +1,67 @@
+package com.cerner.devcon.client;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Blocking calls over an {@link AccountClient}, each waiting for its reply.
+ *
+ * Meant for a thread per simulated client, ideally virtual threads from
+ * {@link ClientThreads}, where blocking is cheap: a waiting virtual thread
+ * gives up its carrier thread.
+ */
+public class BlockingAccountClient {
+
+	private final AccountClient client;
+
+	private final long timeout;
+
+	private final TimeUnit unit;
+
+	public BlockingAccountClient(AccountClient client, long timeout,
+			TimeUnit unit) {
+		this.client = client;
+		this.timeout = timeout;
+		this.unit = unit;
+	}
+
+	public boolean deposit(long amount) throws InterruptedException,
+			TimeoutException {
+		return await(client.deposit(amount));
+	}
+
+	public boolean withdraw(long amount) throws InterruptedException,
+			TimeoutException {
+		return await(client.withdraw(amount));
+	}
+
+	public long balance() throws InterruptedException, TimeoutException {
+		return await(client.balance());
+	}
+
+	/**
+	 * @throws CompletionException
+	 *             if the call failed with a checked exception
+	 */
+	private <T> T await(CompletableFuture<T> future)
+			throws InterruptedException, TimeoutException {
+		try {
+			return future.get(timeout, unit);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof TimeoutException) {
+				// the engine's own timeout, such as an AskTimeoutException
+				throw (TimeoutException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new CompletionException(cause);
+		}
+	}
+
+}
@@ -0,0 +1,63 @@
+package com.cerner.devcon.client;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executors running each simulated client on a thread of its own.
+ *
+ * On a JDK with virtual threads (21 on) these are virtual threads, so a
+ * million blocked clients cost little more than their stacks on the heap.
+ * The project builds for older JDKs, so they are found by reflection; where
+ * there are none a cached pool of platform threads is used instead, which
+ * only suits a few thousand clients.
+ */
+public final class ClientThreads {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(ClientThreads.class);
+
+	private static final Method NEW_VIRTUAL_THREAD_EXECUTOR = lookup();
+
+	private ClientThreads() {
+	}
+
+	/**
+	 * @return whether {@link #newThreadPerTaskExecutor()} uses virtual
+	 *         threads
+	 */
+	public static boolean hasVirtualThreads() {
+		return NEW_VIRTUAL_THREAD_EXECUTOR != null;
+	}
+
+	/**
+	 * An executor starting a thread for each task, virtual if the JDK has
+	 * them.
+	 */
+	public static ExecutorService newThreadPerTaskExecutor() {
+		if (NEW_VIRTUAL_THREAD_EXECUTOR != null) {
+			try {
+				return (ExecutorService) NEW_VIRTUAL_THREAD_EXECUTOR
+						.invoke(null);
+			} catch (ReflectiveOperationException e) {
+				log.warn("can not create a virtual thread executor, "
+						+ "using platform threads", e);
+			}
+		}
+		return Executors.newCachedThreadPool();
+	}
+
+	private static Method lookup() {
+		try {
+			return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch (NoSuchMethodException e) {
+			log.info("no virtual threads, clients run on platform threads");
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,46 @@
+package com.cerner.devcon.client;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import scala.concurrent.ExecutionContext;
+import scala.concurrent.Future;
+import akka.dispatch.ExecutionContexts;
+import akka.dispatch.OnComplete;
+
+/**
+ * Adapts Scala futures to CompletableFutures.
+ */
+final class CompletableFutures {
+
+	/**
+	 * Runs the completion on the thread completing the Scala future, which
+	 * only completes the CompletableFuture, instead of scheduling it.
+	 */
+	private static final ExecutionContext CALLING_THREAD = ExecutionContexts
+			.fromExecutor(new Executor() {
+				@Override
+				public void execute(Runnable command) {
+					command.run();
+				}
+			});
+
+	private CompletableFutures() {
+	}
+
+	static <T> CompletableFuture<T> of(Future<T> future) {
+		final CompletableFuture<T> result = new CompletableFuture<T>();
+		future.onComplete(new OnComplete<T>() {
+			@Override
+			public void onComplete(Throwable failure, T value) {
+				if (failure != null) {
+					result.completeExceptionally(failure);
+				} else {
+					result.complete(value);
+				}
+			}
+		}, CALLING_THREAD);
+		return result;
+	}
+
+}
@@ -0,0 +1,33 @@
+package com.cerner.devcon.client;
+
+import java.util.concurrent.CompletableFuture;
+
+import com.cerner.devcon.typed.BankAccount;
+
+/**
+ * AccountClient over a typed account: a TypedActor proxy or a stub.
+ */
+public class TypedAccountClient implements AccountClient {
+
+	private final BankAccount account;
+
+	public TypedAccountClient(BankAccount account) {
+		this.account = account;
+	}
+
+	@Override
+	public CompletableFuture<Boolean> deposit(long amount) {
+		return CompletableFutures.of(account.deposit(amount));
+	}
+
+	@Override
+	public CompletableFuture<Boolean> withdraw(long amount) {
+		return CompletableFutures.of(account.withdraw(amount));
+	}
+
+	@Override
+	public CompletableFuture<Long> balance() {
+		return CompletableFutures.of(account.balance());
+	}
+
+}
@@ -8,13 +8,78 @@ import scala.concurrent.Future;
  * 
  * API returns Futures so that all calls will be nonblocking.  Futures are completed 
  * in TypedActor impl
+ * 
+ * Amounts and balances are longs of minor units (cents).
  */
 public interface BankAccount {
 
-	public Future<Boolean> deposit(double amount);
+	public Future<Boolean> deposit(long amount);
+
+	public Future<Boolean> withdraw(long amount);
+
+	public Future<Long> balance();
+
+	/**
+	 * Deposit every amount in one call, in order.
+	 * 
+	 * The array is read by the actor after the call returns, so it must not
+	 * be changed until the future completes.
+	 * 
+	 * @return whether each deposit was done
+	 */
+	public Future<boolean[]> depositAll(long[] amounts);
+
+	/**
+	 * Apply a batch of operations in one call, in order. Operation i is a
+	 * withdraw of amounts[i] if withdrawals[i] is true, else a deposit.
+	 * 
+	 * The arrays are read by the actor after the call returns, so they must
+	 * not be changed until the future completes.
+	 * 
+	 * @return whether each operation was done
+	 */
+	public Future<boolean[]> applyAll(boolean[] withdrawals, long[] amounts);
+
+	/**
+	 * One way deposit: sent without a reply or a future. The outcome is
+	 * counted in the next {@link #acknowledge()}.
+	 */
+	public void depositAsync(long amount);
+
+	/**
+	 * One way withdraw: sent without a reply or a future. The outcome is
+	 * counted in the next {@link #acknowledge()}.
+	 */
+	public void withdrawAsync(long amount);
+
+	/**
+	 * Batched acknowledgement of the one way operations. It is answered after
+	 * every one way operation the caller sent before it.
+	 * 
+	 * @return the one way operations done and failed so far, from all
+	 *         callers
+	 */
+	public Future<Acknowledgement> acknowledge();
+
+	/**
+	 * Totals of one way operations.
+	 */
+	public static final class Acknowledgement {
+		private final long done;
+		private final long failed;
+
+		public Acknowledgement(long done, long failed) {
+			this.done = done;
+			this.failed = failed;
+		}
 
-	public Future<Boolean> withdraw(double amount);
+		public long getDone() {
+			return done;
+		}
 
-	public Future<Double> balance();
+		public long getFailed() {
+			return failed;
+		}
+	}
 
 }
@@ -0,0 +1,140 @@
+package com.cerner.devcon.typed;
+
+import scala.concurrent.ExecutionContext;
+import scala.concurrent.Future;
+import scala.util.Try;
+import akka.actor.ActorRef;
+import akka.actor.Props;
+import akka.actor.Status;
+import akka.actor.UntypedActor;
+import akka.event.Logging;
+import akka.japi.Creator;
+import akka.pattern.Patterns;
+
+/**
+ * Actor side of {@link BankAccountStub}: hosts a {@link BankAccountTypedActor}
+ * and calls it for each {@link Call}, selected by a switch on the method
+ * number, with no reflection or boxed arguments.
+ *
+ * Replies with the value of the future the method returns, or a
+ * Status.Failure, which is what the stub's ask expects. One way methods are
+ * not answered.
+ */
+public class BankAccountSkeleton extends UntypedActor {
+
+	static final int DEPOSIT = 0;
+	static final int WITHDRAW = 1;
+	static final int BALANCE = 2;
+	static final int DEPOSIT_ALL = 3;
+	static final int APPLY_ALL = 4;
+	static final int DEPOSIT_ASYNC = 5;
+	static final int WITHDRAW_ASYNC = 6;
+	static final int ACKNOWLEDGE = 7;
+
+	/**
+	 * A call on {@link BankAccount}, with the arguments of its method.
+	 */
+	public static final class Call {
+		final int method;
+		final long amount;
+		final long[] amounts;
+		final boolean[] withdrawals;
+
+		Call(int method, long amount, long[] amounts, boolean[] withdrawals) {
+			this.method = method;
+			this.amount = amount;
+			this.amounts = amounts;
+			this.withdrawals = withdrawals;
+		}
+	}
+
+	static final Call BALANCE_CALL = new Call(BALANCE, 0, null, null);
+
+	static final Call ACKNOWLEDGE_CALL = new Call(ACKNOWLEDGE, 0, null, null);
+
+	private final BankAccount account;
+
+	public BankAccountSkeleton(int accountNumber, long balance) {
+		this.account = new BankAccountTypedActor(accountNumber, balance,
+				Logging.getLogger(getContext().system(), this));
+	}
+
+	@Override
+	public void onReceive(Object msg) {
+		if (!(msg instanceof Call)) {
+			unhandled(msg);
+			return;
+		}
+		Call call = (Call) msg;
+		Future<?> result;
+		switch (call.method) {
+		case DEPOSIT:
+			result = account.deposit(call.amount);
+			break;
+		case WITHDRAW:
+			result = account.withdraw(call.amount);
+			break;
+		case BALANCE:
+			result = account.balance();
+			break;
+		case DEPOSIT_ALL:
+			result = account.depositAll(call.amounts);
+			break;
+		case APPLY_ALL:
+			result = account.applyAll(call.withdrawals, call.amounts);
+			break;
+		case DEPOSIT_ASYNC:
+			account.depositAsync(call.amount);
+			return;
+		case WITHDRAW_ASYNC:
+			account.withdrawAsync(call.amount);
+			return;
+		case ACKNOWLEDGE:
+			result = account.acknowledge();
+			break;
+		default:
+			unhandled(msg);
+			return;
+		}
+		reply(result, getSender(), getSelf(), getContext().dispatcher());
+	}
+
+	/**
+	 * Send the outcome of a method's future to the caller, at once if it is
+	 * already complete.
+	 */
+	static void reply(Future<?> result, ActorRef to, ActorRef self,
+			ExecutionContext ec) {
+		if (result.isCompleted()) {
+			Try<?> value = result.value().get();
+			to.tell(value.isSuccess() ? value.get() : new Status.Failure(
+					value.failed().get()), self);
+		} else {
+			Patterns.pipe(result, ec).to(to, self);
+		}
+	}
+
+	public static Props props(final int accountNumber, final long balance) {
+		return Props.create(new BankAccountSkeletonCreator(accountNumber,
+				balance));
+	}
+
+	public static class BankAccountSkeletonCreator implements
+			Creator<BankAccountSkeleton> {
+		private static final long serialVersionUID = 1L;
+		private int accountNumber;
+		private long balance;
+
+		public BankAccountSkeletonCreator(final int accountNumber,
+				final long balance) {
+			this.accountNumber = accountNumber;
+			this.balance = balance;
+		}
+
+		@Override
+		public BankAccountSkeleton create() throws Exception {
+			return new BankAccountSkeleton(accountNumber, balance);
+		}
+	}
+
+}
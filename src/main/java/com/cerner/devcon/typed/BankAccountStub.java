@@ -0,0 +1,91 @@
+package com.cerner.devcon.typed;
+
+import scala.concurrent.Future;
+import akka.actor.ActorRef;
+import akka.pattern.Patterns;
+import akka.util.Timeout;
+
+/**
+ * Client side of a {@link BankAccountSkeleton}, used like the proxy from
+ * TypedActor.typedActorOf.
+ *
+ * The proxy dispatches every call reflectively and wraps it in a MethodCall
+ * with the arguments boxed in an Object[]. The stub sends a
+ * {@link BankAccountSkeleton.Call} holding the arguments as primitive fields
+ * instead. Like the proxy's, each call is an ask, bounded by the timeout,
+ * and the one way calls are tells.
+ */
+public class BankAccountStub implements BankAccount {
+
+	private final ActorRef skeleton;
+
+	private final Timeout timeout;
+
+	public BankAccountStub(ActorRef skeleton, Timeout timeout) {
+		this.skeleton = skeleton;
+		this.timeout = timeout;
+	}
+
+	@Override
+	public Future<Boolean> deposit(long amount) {
+		return call(skeleton, new BankAccountSkeleton.Call(
+				BankAccountSkeleton.DEPOSIT, amount, null, null), timeout);
+	}
+
+	@Override
+	public Future<Boolean> withdraw(long amount) {
+		return call(skeleton, new BankAccountSkeleton.Call(
+				BankAccountSkeleton.WITHDRAW, amount, null, null), timeout);
+	}
+
+	@Override
+	public Future<Long> balance() {
+		return call(skeleton, BankAccountSkeleton.BALANCE_CALL, timeout);
+	}
+
+	@Override
+	public Future<boolean[]> depositAll(long[] amounts) {
+		return call(skeleton, new BankAccountSkeleton.Call(
+				BankAccountSkeleton.DEPOSIT_ALL, 0, amounts, null), timeout);
+	}
+
+	@Override
+	public Future<boolean[]> applyAll(boolean[] withdrawals, long[] amounts) {
+		return call(skeleton, new BankAccountSkeleton.Call(
+				BankAccountSkeleton.APPLY_ALL, 0, amounts, withdrawals),
+				timeout);
+	}
+
+	@Override
+	public void depositAsync(long amount) {
+		skeleton.tell(new BankAccountSkeleton.Call(
+				BankAccountSkeleton.DEPOSIT_ASYNC, amount, null, null),
+				ActorRef.noSender());
+	}
+
+	@Override
+	public void withdrawAsync(long amount) {
+		skeleton.tell(new BankAccountSkeleton.Call(
+				BankAccountSkeleton.WITHDRAW_ASYNC, amount, null, null),
+				ActorRef.noSender());
+	}
+
+	@Override
+	public Future<Acknowledgement> acknowledge() {
+		return call(skeleton, BankAccountSkeleton.ACKNOWLEDGE_CALL, timeout);
+	}
+
+	public ActorRef getSkeleton() {
+		return skeleton;
+	}
+
+	/**
+	 * Ask the skeleton, typed by the method's result; the skeleton replies
+	 * with a value of that type.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	static <T> Future<T> call(ActorRef skeleton, Object call, Timeout timeout) {
+		return (Future) Patterns.ask(skeleton, call, timeout);
+	}
+
+}
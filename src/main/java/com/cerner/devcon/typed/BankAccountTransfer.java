@@ -8,10 +8,12 @@ import scala.concurrent.Future;
  * 
  * API returns Futures so that all calls will be nonblocking.  Futures are completed 
  * in TypedActor impl
+ * 
+ * Prefer the shared {@link BankTransferService} to a typed actor per transfer.
  */
 public interface BankAccountTransfer {
 
-	public Future<Boolean> transfer(BankAccount from, double amount,
+	public Future<Boolean> transfer(BankAccount from, long amount,
 			BankAccount to) ;
 
 }
\ No newline at end of file
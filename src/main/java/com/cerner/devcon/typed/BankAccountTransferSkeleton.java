@@ -0,0 +1,45 @@
+package com.cerner.devcon.typed;
+
+import akka.actor.UntypedActor;
+import akka.event.Logging;
+
+/**
+ * Actor side of {@link BankAccountTransferStub}: hosts a
+ * {@link BankTransferTypedActor} and calls it for each {@link Call}.
+ *
+ * The accounts in a call may be stubs or TypedActor proxies.
+ */
+public class BankAccountTransferSkeleton extends UntypedActor {
+
+	/**
+	 * A call on {@link BankAccountTransfer#transfer}.
+	 */
+	public static final class Call {
+		final BankAccount from;
+		final long amount;
+		final BankAccount to;
+
+		Call(BankAccount from, long amount, BankAccount to) {
+			this.from = from;
+			this.amount = amount;
+			this.to = to;
+		}
+	}
+
+	private final BankAccountTransfer transfer = new BankTransferTypedActor(
+			Logging.getLogger(getContext().system(), this), getContext()
+					.dispatcher());
+
+	@Override
+	public void onReceive(Object msg) {
+		if (msg instanceof Call) {
+			Call call = (Call) msg;
+			BankAccountSkeleton.reply(
+					transfer.transfer(call.from, call.amount, call.to),
+					getSender(), getSelf(), getContext().dispatcher());
+		} else {
+			unhandled(msg);
+		}
+	}
+
+}
@@ -0,0 +1,30 @@
+package com.cerner.devcon.typed;
+
+import scala.concurrent.Future;
+import akka.actor.ActorRef;
+import akka.util.Timeout;
+
+/**
+ * Client side of a {@link BankAccountTransferSkeleton}, used like the proxy
+ * from TypedActor.typedActorOf but without reflection or boxed arguments.
+ */
+public class BankAccountTransferStub implements BankAccountTransfer {
+
+	private final ActorRef skeleton;
+
+	private final Timeout timeout;
+
+	public BankAccountTransferStub(ActorRef skeleton, Timeout timeout) {
+		this.skeleton = skeleton;
+		this.timeout = timeout;
+	}
+
+	@Override
+	public Future<Boolean> transfer(BankAccount from, long amount,
+			BankAccount to) {
+		return BankAccountStub.call(skeleton,
+				new BankAccountTransferSkeleton.Call(from, amount, to),
+				timeout);
+	}
+
+}
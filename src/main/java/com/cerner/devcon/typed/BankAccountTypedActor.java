@@ -18,27 +18,100 @@ import akka.japi.Creator;
 public class BankAccountTypedActor implements BankAccount {
 
 	
-	LoggingAdapter log = Logging.getLogger(TypedActor.context().system(), TypedActor.context().self());
+	final LoggingAdapter log;
 	 
-	public BankAccountTypedActor(int accountNumber, double balance) {
+	public BankAccountTypedActor(int accountNumber, long balance) {
+		this(accountNumber, balance, Logging.getLogger(TypedActor.context()
+				.system(), TypedActor.context().self()));
+	}
+
+	/**
+	 * For hosting the implementation in an actor other than a TypedActor,
+	 * such as {@link BankAccountSkeleton}.
+	 */
+	public BankAccountTypedActor(int accountNumber, long balance,
+			LoggingAdapter log) {
 		this.accountNumber = accountNumber;
 		this.accountBalance = balance;
+		this.log = log;
 	}
 
 	int accountNumber;
 
-	double accountBalance;
+	long accountBalance;
+
+	// outcomes of the one way operations
+	long oneWayDone;
+	long oneWayFailed;
 
 	// to withdraw funds from the account
 	@Override
-	public Future<Boolean> withdraw(double amount) {
-		
-		
-		double newAccountBalance;
+	public Future<Boolean> withdraw(long amount) {
+		return Futures.successful(doWithdraw(amount));
+	}
+
+	@Override
+	public Future<Boolean> deposit(long amount) {
+		return Futures.successful(doDeposit(amount));
+	}
+
+	@Override
+	public Future<boolean[]> depositAll(long[] amounts) {
+		boolean[] done = new boolean[amounts.length];
+		for (int i = 0; i < amounts.length; i++) {
+			done[i] = doDeposit(amounts[i]);
+		}
+		return Futures.successful(done);
+	}
+
+	@Override
+	public Future<boolean[]> applyAll(boolean[] withdrawals, long[] amounts) {
+		if (withdrawals.length != amounts.length) {
+			return Futures.failed(new IllegalArgumentException(
+					withdrawals.length + " operations and " + amounts.length
+							+ " amounts"));
+		}
+		boolean[] done = new boolean[amounts.length];
+		for (int i = 0; i < amounts.length; i++) {
+			done[i] = withdrawals[i] ? doWithdraw(amounts[i])
+					: doDeposit(amounts[i]);
+		}
+		return Futures.successful(done);
+	}
+
+	@Override
+	public void depositAsync(long amount) {
+		count(doDeposit(amount));
+	}
+
+	@Override
+	public void withdrawAsync(long amount) {
+		count(doWithdraw(amount));
+	}
+
+	@Override
+	public Future<Acknowledgement> acknowledge() {
+		return Futures.successful(new Acknowledgement(oneWayDone, oneWayFailed));
+	}
+
+	private void count(boolean done) {
+		if (done) {
+			oneWayDone++;
+		} else {
+			oneWayFailed++;
+		}
+	}
 
-		if (amount > accountBalance) {
+	private boolean doWithdraw(long amount) {
+		long newAccountBalance;
+
+		if (amount < 0) {
+			return false; // can not withdraw a negative amount
+		}
+
+		else if (amount > accountBalance) {
 			// there are not enough funds in the account
-			return Futures.successful(false);
+			return false;
 		}
 
 		else {
@@ -46,30 +119,29 @@ public class BankAccountTypedActor implements BankAccount {
 			accountBalance = newAccountBalance;
 
 			log.debug("bank withdraw done");
-			return Futures.successful(true);
+			return true;
 		}
 
 	}
 
-	@Override
-	public Future<Boolean> deposit(double amount) {
-		double newAccountBalance;
+	private boolean doDeposit(long amount) {
+		long newAccountBalance;
 
-		if (amount < 0.0) {
-			return Futures.successful(false); // can not deposit a negative amount
+		if (amount < 0) {
+			return false; // can not deposit a negative amount
 		}
 
 		else {
 			newAccountBalance = accountBalance + amount;
 			accountBalance = newAccountBalance;
 			log.debug("sending bank deposit done");
-			return Futures.successful(true);
+			return true;
 		}
 
 	}
 
 	@Override
-	public Future<Double> balance() {
+	public Future<Long> balance() {
 		log.debug("sending balance");
 		return Futures.successful(accountBalance);
 	}
@@ -82,7 +154,7 @@ public class BankAccountTypedActor implements BankAccount {
 	 * @param balance
 	 * @return
 	 */
-	public static TypedProps<BankAccountTypedActor> props(final int accountNumber, final double balance) {
+	public static TypedProps<BankAccountTypedActor> props(final int accountNumber, final long balance) {
 		return new TypedProps<BankAccountTypedActor>(BankAccount.class, new BankAccountCreator(accountNumber, balance));
 	}
 	
@@ -91,11 +163,11 @@ public class BankAccountTypedActor implements BankAccount {
 	 *
 	 */
 	public static class BankAccountCreator implements Creator<BankAccountTypedActor> {
-		private final long serialVersionUID = 1L;
+		private static final long serialVersionUID = 1L;
 		private int accountNumber;
-		private double balance;
+		private long balance;
 
-		public BankAccountCreator(final int accountNumber, final double balance) {
+		public BankAccountCreator(final int accountNumber, final long balance) {
 			this.accountNumber =accountNumber;
 			this.balance = balance;
 		}
@@ -0,0 +1,69 @@
+package com.cerner.devcon.typed;
+
+import scala.concurrent.ExecutionContext;
+import scala.concurrent.Future;
+import akka.actor.ActorSystem;
+import akka.event.Logging;
+
+import com.cerner.devcon.actor.DispatcherProfiles;
+
+/**
+ * Transfers between typed accounts without an actor per transfer. This is
+ * the recommended way to transfer between typed accounts.
+ *
+ * A transfer only composes the futures of the two accounts and holds no
+ * state, so it does not need an actor of its own, let alone a new
+ * BankTransferTypedActor for each transfer. One service is shared by all
+ * callers and runs the compositions on its execution context.
+ */
+public class BankTransferService implements BankAccountTransfer {
+
+	private final BankAccountTransfer transfer;
+
+	/**
+	 * @param ec
+	 *            runs the deposit once the withdraw completes
+	 */
+	public BankTransferService(ActorSystem system, ExecutionContext ec) {
+		this(system, ec, false);
+	}
+
+	/**
+	 * @param oneWayDeposit
+	 *            send the deposit leg one way, see
+	 *            {@link #createOneWay(ActorSystem)}
+	 */
+	public BankTransferService(ActorSystem system, ExecutionContext ec,
+			boolean oneWayDeposit) {
+		this.transfer = new BankTransferTypedActor(Logging.getLogger(system,
+				BankTransferService.class), ec, oneWayDeposit);
+	}
+
+	@Override
+	public Future<Boolean> transfer(BankAccount from, long amount,
+			BankAccount to) {
+		return transfer.transfer(from, amount, to);
+	}
+
+	/**
+	 * A service running on the transfers dispatcher.
+	 */
+	public static BankTransferService create(ActorSystem system) {
+		return new BankTransferService(system, system.dispatchers().lookup(
+				DispatcherProfiles.TRANSFERS));
+	}
+
+	/**
+	 * A service that sends the deposit leg of a transfer with
+	 * {@link BankAccount#depositAsync} and completes the transfer when the
+	 * withdraw is done, saving the deposit's reply and future. The deposit
+	 * is seen by later calls on the to account, and its outcome is in that
+	 * account's {@link BankAccount#acknowledge()}. A deposit that fails there
+	 * is not refunded; the transfer has already reported done.
+	 */
+	public static BankTransferService createOneWay(ActorSystem system) {
+		return new BankTransferService(system, system.dispatchers().lookup(
+				DispatcherProfiles.TRANSFERS), true);
+	}
+
+}
@@ -13,11 +13,47 @@ import akka.event.LoggingAdapter;
  * 
  * Note that it doesn't require implementing or extending any Akka class.
  * 
+ * With oneWayDeposit a transfer is reported done once the withdraw is. The
+ * deposit is sent one way and is not checked, so if it fails the amount has
+ * left the from account without arriving; such failures only show in the
+ * failed count of the to account's {@link BankAccount#acknowledge()}.
  */
 public class BankTransferTypedActor implements BankAccountTransfer {
 
-	LoggingAdapter log = Logging.getLogger(TypedActor.context().system(),
-			TypedActor.context().self());
+	final LoggingAdapter log;
+
+	final ExecutionContext ec;
+
+	final boolean oneWayDeposit;
+
+	public BankTransferTypedActor() {
+		this(Logging.getLogger(TypedActor.context().system(), TypedActor
+				.context().self()), TypedActor.dispatcher());
+	}
+
+	/**
+	 * For hosting the implementation in an actor other than a TypedActor,
+	 * such as {@link BankAccountTransferSkeleton}.
+	 * 
+	 * @param ec
+	 *            runs the deposit once the withdraw completes
+	 */
+	public BankTransferTypedActor(LoggingAdapter log, ExecutionContext ec) {
+		this(log, ec, false);
+	}
+
+	/**
+	 * @param oneWayDeposit
+	 *            send the deposit with {@link BankAccount#depositAsync} and
+	 *            complete the transfer once the withdraw is done, without
+	 *            waiting for a deposit reply
+	 */
+	public BankTransferTypedActor(LoggingAdapter log, ExecutionContext ec,
+			boolean oneWayDeposit) {
+		this.log = log;
+		this.ec = ec;
+		this.oneWayDeposit = oneWayDeposit;
+	}
 
 	/**
 	 * Send a withdraw message and when it completes send the deposit message.
@@ -26,8 +62,10 @@ public class BankTransferTypedActor implements BankAccountTransfer {
 	 */
 	@Override
 	public Future<Boolean> transfer(final BankAccount from,
-			final double amount, final BankAccount to) {
-		final ExecutionContext ec = TypedActor.dispatcher();
+			final long amount, final BankAccount to) {
+		if (oneWayDeposit) {
+			return transferOneWay(from, amount, to);
+		}
 		Future<Boolean> f = from.withdraw(amount).flatMap(
 				new Mapper<Boolean, Future<Boolean>>() {
 					public Future<Boolean> apply(Boolean result) {
@@ -44,4 +82,21 @@ public class BankTransferTypedActor implements BankAccountTransfer {
 
 	}
 
+	/**
+	 * Withdraw, then send the deposit one way. The transfer is done when the
+	 * withdraw is.
+	 */
+	private Future<Boolean> transferOneWay(final BankAccount from,
+			final long amount, final BankAccount to) {
+		return from.withdraw(amount).map(new Mapper<Boolean, Boolean>() {
+			public Boolean apply(Boolean result) {
+				if (result) {
+					log.debug("txfr done");
+					to.depositAsync(amount);
+				}
+				return result;
+			}
+		}, ec);
+	}
+
 }
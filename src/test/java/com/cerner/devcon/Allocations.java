@@ -0,0 +1,38 @@
+package com.cerner.devcon;
+
+import java.lang.management.ManagementFactory;
+
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Allocation counter shared by the benchmark tests of the actor and typed
+ * packages.
+ *
+ * Uses the HotSpot ThreadMXBean, which counts the bytes each thread has
+ * allocated. The count covers every live thread, including the dispatcher,
+ * scheduler and logging threads, so a difference between two readings is
+ * only indicative of what the measured code allocated.
+ */
+public final class Allocations {
+
+	private static final ThreadMXBean threads = (ThreadMXBean) ManagementFactory
+			.getThreadMXBean();
+
+	private Allocations() {
+	}
+
+	/**
+	 * @return bytes allocated so far by all live threads
+	 */
+	public static long allocatedBytes() {
+		long total = 0;
+		for (long bytes : threads.getThreadAllocatedBytes(threads
+				.getAllThreadIds())) {
+			if (bytes > 0) {
+				total += bytes;
+			}
+		}
+		return total;
+	}
+
+}
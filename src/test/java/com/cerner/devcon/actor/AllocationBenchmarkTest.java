@@ -0,0 +1,139 @@
+package com.cerner.devcon.actor;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.actor.UntypedActor;
+import akka.testkit.JavaTestKit;
+
+import com.cerner.devcon.Allocations;
+
+/**
+ * Measures the bytes allocated per operation on an account actor, with new
+ * messages for every operation and with the shared flyweight messages.
+ *
+ * Counts the allocations of every live thread, so it includes what Akka
+ * allocates for the envelopes and mailbox, not only the messages. The
+ * dispatcher, scheduler and logging threads allocate too, so the numbers are
+ * only logged; that the shared messages are not allocated is checked by
+ * identity in testFlyweights.
+ */
+public class AllocationBenchmarkTest {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(AllocationBenchmarkTest.class);
+
+	private static final int opCount = 200000;
+
+	static ActorSystem system;
+
+	@BeforeClass
+	public static void setup() {
+		system = ActorSystem.create();
+	}
+
+	@AfterClass
+	public static void teardown() {
+		JavaTestKit.shutdownActorSystem(system);
+	}
+
+	/**
+	 * Counts down a latch for each reply it receives.
+	 */
+	public static class ReplyCounter extends UntypedActor {
+		private final CountDownLatch latch;
+
+		public ReplyCounter(CountDownLatch latch) {
+			this.latch = latch;
+		}
+
+		@Override
+		public void onReceive(Object msg) {
+			latch.countDown();
+		}
+	}
+
+	private interface Operation {
+		Object message();
+	}
+
+	@Test
+	public void testFlyweights() {
+		assertSame(BankAccount.Deposit.of(100), BankAccount.Deposit.of(100));
+		assertSame(BankAccount.Withdraw.of(0), BankAccount.Withdraw.of(0));
+		assertEquals(BankAccount.CACHED_AMOUNTS,
+				BankAccount.Deposit.of(BankAccount.CACHED_AMOUNTS).getAmount());
+		assertEquals(BankAccount.NO_ID, BankAccount.Deposit.of(1).getId());
+	}
+
+	@Test
+	public void testAllocationPerOperation() throws Exception {
+		Operation newDeposit = new Operation() {
+			@Override
+			public Object message() {
+				return new BankAccount.Deposit(1);
+			}
+		};
+		Operation sharedDeposit = new Operation() {
+			@Override
+			public Object message() {
+				return BankAccount.Deposit.of(1);
+			}
+		};
+		Operation newBalance = new Operation() {
+			@Override
+			public Object message() {
+				return new BankAccount.BalanceRequest();
+			}
+		};
+		Operation sharedBalance = new Operation() {
+			@Override
+			public Object message() {
+				return BankAccount.BALANCE_REQUEST;
+			}
+		};
+
+		// warm up
+		bytesPerOp(newDeposit);
+		bytesPerOp(sharedDeposit);
+
+		long newDepositBytes = bytesPerOp(newDeposit);
+		long sharedDepositBytes = bytesPerOp(sharedDeposit);
+		long newBalanceBytes = bytesPerOp(newBalance);
+		long sharedBalanceBytes = bytesPerOp(sharedBalance);
+		log.info(String.format(
+				"bytes/op: deposit new %d shared %d, balance new %d shared %d",
+				newDepositBytes, sharedDepositBytes, newBalanceBytes,
+				sharedBalanceBytes));
+	}
+
+	private long bytesPerOp(Operation op) throws Exception {
+		CountDownLatch latch = new CountDownLatch(opCount);
+		ActorRef account = system.actorOf(BankAccount.props(1, 0));
+		ActorRef counter = system.actorOf(Props.create(ReplyCounter.class,
+				latch));
+
+		long before = Allocations.allocatedBytes();
+		for (int i = 0; i < opCount; i++) {
+			account.tell(op.message(), counter);
+		}
+		assertTrue(latch.await(30, TimeUnit.SECONDS));
+		long allocated = Allocations.allocatedBytes() - before;
+
+		system.stop(account);
+		system.stop(counter);
+		return allocated / opCount;
+	}
+
+}
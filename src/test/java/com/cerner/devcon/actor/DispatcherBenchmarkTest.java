@@ -0,0 +1,162 @@
+package com.cerner.devcon.actor;
+
+import static akka.dispatch.Futures.*;
+import static akka.pattern.Patterns.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import scala.concurrent.Await;
+import scala.concurrent.Future;
+import scala.concurrent.duration.Duration;
+import scala.concurrent.duration.FiniteDuration;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.PoisonPill;
+import akka.actor.TypedActor;
+import akka.testkit.JavaTestKit;
+import akka.util.Timeout;
+
+import com.cerner.devcon.typed.BankAccountTypedActor;
+
+/**
+ * Sweeps the dispatcher profiles over the deposit and transfer workloads and
+ * logs the throughput of each, to choose the profiles from data.
+ *
+ */
+public class DispatcherBenchmarkTest {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(DispatcherBenchmarkTest.class);
+
+	final FiniteDuration d = Duration.create(30, TimeUnit.SECONDS);
+	final Timeout t = Timeout.durationToTimeout(d);
+
+	private static final int depositCount = 50000;
+	private static final int transferCount = 10000;
+
+	private static final String[] dispatchers = { DispatcherProfiles.DEFAULT,
+			DispatcherProfiles.HOT_ACCOUNT, DispatcherProfiles.FIXED_POOL,
+			DispatcherProfiles.THROUGHPUT_BATCH };
+
+	static ActorSystem system;
+
+	@BeforeClass
+	public static void setup() {
+		system = ActorSystem.create();
+	}
+
+	@AfterClass
+	public static void teardown() {
+		JavaTestKit.shutdownActorSystem(system);
+	}
+
+	@Test
+	public void testProfilesResolve() throws Exception {
+		ActorRef account = system.actorOf(DispatcherProfiles
+				.forAccounts(BankAccount.props(1, 0)));
+		assertEquals(BankAccount.TransactionStatus.DONE, Await.result(
+				ask(account, new BankAccount.Deposit(1), t), d));
+
+		com.cerner.devcon.typed.BankAccount typed = TypedActor.get(system)
+				.typedActorOf(
+						DispatcherProfiles.forTyped(BankAccountTypedActor
+								.props(2, 0)));
+		assertTrue(Await.result(typed.deposit(1), d));
+		TypedActor.get(system).stop(typed);
+
+		ActorRef coordinators = system.actorOf(DispatcherProfiles
+				.forCoordinators(TransferCoordinator.pool(2,
+						DispatcherProfiles.COORDINATORS)));
+		assertEquals(BankTransfer.TransferStatus.DONE, Await.result(
+				ask(coordinators, new BankTransfer.Transfer(account, account,
+						1), t), d));
+	}
+
+	@Test
+	public void testDispatcherSweep() throws Exception {
+		for (String dispatcher : dispatchers) {
+			// first pass warms up, the second is logged
+			deposits(dispatcher);
+			transfers(dispatcher);
+			typedDeposits(dispatcher);
+			log.info(String.format(
+					"%s: deposit %d/s, transfer %d/s, typed deposit %d/s",
+					dispatcher, deposits(dispatcher), transfers(dispatcher),
+					typedDeposits(dispatcher)));
+		}
+	}
+
+	/**
+	 * @return deposits per second to one account
+	 */
+	private long deposits(String dispatcher) throws Exception {
+		ActorRef account = system.actorOf(BankAccount.props(1, 0)
+				.withDispatcher(dispatcher));
+		long start = System.nanoTime();
+		List<Future<Object>> futures = new ArrayList<Future<Object>>();
+		for (int i = 0; i < depositCount; i++) {
+			futures.add(ask(account, new BankAccount.Deposit(1), t));
+		}
+		Await.result(sequence(futures, system.dispatcher()), d);
+		long rate = depositCount * 1000000000L / (System.nanoTime() - start);
+		account.tell(PoisonPill.getInstance(), ActorRef.noSender());
+		return rate;
+	}
+
+	/**
+	 * @return transfers per second between two accounts through a pool of
+	 *         coordinators, all on the dispatcher
+	 */
+	private long transfers(String dispatcher) throws Exception {
+		ActorRef a = system.actorOf(BankAccount.props(1, transferCount)
+				.withDispatcher(dispatcher));
+		ActorRef b = system.actorOf(BankAccount.props(2, transferCount)
+				.withDispatcher(dispatcher));
+		ActorRef coordinators = system.actorOf(TransferCoordinator.pool(2,
+				dispatcher));
+		long start = System.nanoTime();
+		List<Future<Object>> futures = new ArrayList<Future<Object>>();
+		for (int i = 0; i < transferCount / 2; i++) {
+			futures.add(ask(coordinators, new BankTransfer.Transfer(a, b, 1), t));
+			futures.add(ask(coordinators, new BankTransfer.Transfer(b, a, 1), t));
+		}
+		for (Object result : Await.result(
+				sequence(futures, system.dispatcher()), d)) {
+			assertEquals(BankTransfer.TransferStatus.DONE, result);
+		}
+		long rate = transferCount * 1000000000L / (System.nanoTime() - start);
+		a.tell(PoisonPill.getInstance(), ActorRef.noSender());
+		b.tell(PoisonPill.getInstance(), ActorRef.noSender());
+		coordinators.tell(PoisonPill.getInstance(), ActorRef.noSender());
+		return rate;
+	}
+
+	/**
+	 * @return deposits per second to one typed account
+	 */
+	private long typedDeposits(String dispatcher) throws Exception {
+		com.cerner.devcon.typed.BankAccount account = TypedActor.get(system)
+				.typedActorOf(
+						BankAccountTypedActor.props(1, 0).withDispatcher(
+								dispatcher));
+		long start = System.nanoTime();
+		List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+		for (int i = 0; i < depositCount; i++) {
+			futures.add(account.deposit(1));
+		}
+		Await.result(sequence(futures, system.dispatcher()), d);
+		long rate = depositCount * 1000000000L / (System.nanoTime() - start);
+		TypedActor.get(system).stop(account);
+		return rate;
+	}
+
+}
@@ -4,11 +4,13 @@ import static akka.dispatch.Futures.*;
 import static akka.pattern.Patterns.*;
 import static org.junit.Assert.*;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -25,11 +27,16 @@ import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
 import akka.actor.Props;
 import akka.actor.UntypedActor;
+import akka.dispatch.OnComplete;
 import akka.event.Logging;
 import akka.event.LoggingAdapter;
+import akka.pattern.AskTimeoutException;
 import akka.testkit.JavaTestKit;
 import akka.util.Timeout;
 
+import com.cerner.devcon.bank.DepositCells;
+import com.cerner.devcon.bank.MappedLedger;
+
 /**
  * Tests the UntypedActors
  * 
@@ -74,6 +81,12 @@ public class UntypedActorBankAccountTest {
 
 		private ActorRef probe;
 
+		/**
+		 * Shared coordinator for the txfrs, or null to create a BankTransfer
+		 * actor per txfr
+		 */
+		private ActorRef coordinator;
+
 		/**
 		 * Keep track of the txfrs in progress
 		 */
@@ -86,6 +99,12 @@ public class UntypedActorBankAccountTest {
 
 		}
 
+		public BankTeller(ActorRef accountA, ActorRef accountB,
+				ActorRef coordinator) {
+			this(accountA, accountB);
+			this.coordinator = coordinator;
+		}
+
 		public void onReceive(Object msg) {
 
 			if (msg.equals("start")) {
@@ -100,6 +119,15 @@ public class UntypedActorBankAccountTest {
 				// direction for all the tasks for this teller
 				log.info("deposit done");
 				probe.tell("deposited", getSelf());
+				if (coordinator != null) {
+					for (int i = 0; i < tellerTxfrs; i++) {
+						coordinator.tell(new BankTransfer.Transfer(accountA,
+								accountB, 2), getSelf());
+						coordinator.tell(new BankTransfer.Transfer(accountB,
+								accountA, 2), getSelf());
+					}
+					return;
+				}
 				for (int i = 0; i < tellerTxfrs; i++) {
 					ActorRef txfr = getContext().actorOf(
 							Props.create(BankTransfer.class), "aToBtxfr" + i);
@@ -138,6 +166,221 @@ public class UntypedActorBankAccountTest {
 
 	}
 
+	/**
+	 * An account that never answers, to stall transfers.
+	 */
+	public static class StalledAccount extends UntypedActor {
+		public void onReceive(Object msg) {
+		}
+	}
+
+	/**
+	 * An account that answers, but only after a delay.
+	 */
+	public static class SlowAccount extends UntypedActor {
+		private final ActorRef account;
+		private final FiniteDuration delay;
+
+		public SlowAccount(ActorRef account, FiniteDuration delay) {
+			this.account = account;
+			this.delay = delay;
+		}
+
+		public void onReceive(Object msg) {
+			getContext()
+					.system()
+					.scheduler()
+					.scheduleOnce(delay, account, msg,
+							getContext().dispatcher(), getSender());
+		}
+	}
+
+	/**
+	 * An account that refuses every deposit.
+	 */
+	public static class ClosedAccount extends UntypedActor {
+		public void onReceive(Object msg) {
+			if (msg instanceof BankAccount.Deposit) {
+				getSender().tell(
+						BankAccount.reply(((BankAccount.Deposit) msg).getId(),
+								BankAccount.TransactionStatus.FAILED),
+						getSelf());
+			} else {
+				unhandled(msg);
+			}
+		}
+	}
+
+	@Test
+	public void testFailedOperations() throws Exception {
+		ActorRef account = system.actorOf(BankAccount.props(1, 10));
+		assertEquals(BankAccount.TransactionStatus.FAILED, Await.result(
+				ask(account, new BankAccount.Withdraw(11), t), d));
+		assertEquals(BankAccount.TransactionStatus.FAILED, Await.result(
+				ask(account, new BankAccount.Withdraw(-1), t), d));
+		assertEquals(BankAccount.TransactionStatus.FAILED, Await.result(
+				ask(account, new BankAccount.Deposit(-1), t), d));
+		assertEquals(BankTransfer.TransferStatus.FAILED, Await.result(
+				ask(system.actorOf(Props.create(BankTransfer.class)),
+						new BankTransfer.Transfer(account, account, 11), t), d));
+		assertEquals(10, ((BankAccount.Balance) Await.result(
+				ask(account, BankAccount.BALANCE_REQUEST, t), d)).getAmount());
+	}
+
+	/**
+	 * Transfers from an account that never answers fail after their
+	 * timeout, and the transfer actor stops.
+	 */
+	@Test
+	public void testStalledTransfer() throws Exception {
+		final FiniteDuration timeout = Duration.create(200,
+				TimeUnit.MILLISECONDS);
+		final ActorRef stalled = system.actorOf(Props
+				.create(StalledAccount.class));
+		final ActorRef account = system.actorOf(BankAccount.props(1, 0));
+		final ActorRef coordinator = system.actorOf(TransferCoordinator
+				.props(timeout));
+
+		new JavaTestKit(system) {
+			{
+				ActorRef txfr = system.actorOf(BankTransfer.props(timeout));
+				watch(txfr);
+				txfr.tell(new BankTransfer.Transfer(stalled, account, 1),
+						getRef());
+				expectMsgEquals(duration("1 second"),
+						BankTransfer.TransferStatus.FAILED);
+				// after waiting LATE_REPLY_TIMEOUTS more for a late reply
+				expectTerminated(duration("5 seconds"), txfr);
+
+				coordinator.tell(new BankTransfer.Transfer(stalled, account, 1),
+						getRef());
+				expectMsgEquals(duration("1 second"),
+						BankTransfer.TransferStatus.FAILED);
+			}
+		};
+	}
+
+	/**
+	 * A withdraw that is done after its transfer timed out is refunded, so
+	 * the from account gets its money back.
+	 */
+	@Test
+	public void testLateWithdrawRefunded() throws Exception {
+		final FiniteDuration timeout = Duration.create(200,
+				TimeUnit.MILLISECONDS);
+		final FiniteDuration delay = Duration.create(400,
+				TimeUnit.MILLISECONDS);
+		final ActorRef account = system.actorOf(BankAccount.props(1, 100));
+		final ActorRef slow = system.actorOf(Props.create(SlowAccount.class,
+				account, delay));
+		final ActorRef to = system.actorOf(BankAccount.props(2, 0));
+
+		assertEquals(BankTransfer.TransferStatus.FAILED, Await.result(
+				ask(system.actorOf(BankTransfer.props(timeout)),
+						new BankTransfer.Transfer(slow, to, 40), t), d));
+		assertEquals(BankTransfer.TransferStatus.FAILED, Await.result(
+				ask(system.actorOf(TransferCoordinator.props(timeout)),
+						new BankTransfer.Transfer(slow, to, 30), t), d));
+
+		new JavaTestKit(system) {
+			{
+				new AwaitCond(duration("5 seconds")) {
+					protected boolean cond() {
+						return balance(account) == 100;
+					}
+				};
+			}
+		};
+		assertEquals(0, balance(to));
+	}
+
+	private long balance(ActorRef account) {
+		try {
+			return ((BankAccount.Balance) Await.result(
+					ask(account, BankAccount.BALANCE_REQUEST, t), d))
+					.getAmount();
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * A transfer whose deposit is refused puts the amount back in the from
+	 * account.
+	 */
+	@Test
+	public void testRefundedTransfer() throws Exception {
+		ActorRef account = system.actorOf(BankAccount.props(1, 100));
+		ActorRef closed = system.actorOf(Props.create(ClosedAccount.class));
+
+		assertEquals(BankTransfer.TransferStatus.FAILED, Await.result(
+				ask(system.actorOf(Props.create(BankTransfer.class)),
+						new BankTransfer.Transfer(account, closed, 40), t), d));
+		assertEquals(BankTransfer.TransferStatus.FAILED, Await.result(
+				ask(system.actorOf(TransferCoordinator.props()),
+						new BankTransfer.Transfer(account, closed, 30), t), d));
+		assertEquals(100, ((BankAccount.Balance) Await.result(
+				ask(account, BankAccount.BALANCE_REQUEST, t), d)).getAmount());
+	}
+
+	/**
+	 * The same deposits asked directly and through a ReplyAggregator, which
+	 * answers them without a temporary actor per ask.
+	 */
+	@Test
+	public void testReplyAggregator() throws Exception {
+		final long depositAmt = 100;
+		ActorRef aggregator = system.actorOf(ReplyAggregator.props());
+		for (int run = 0; run < 2; run++) {
+			boolean aggregated = run == 1;
+			ActorRef account = system.actorOf(BankAccount.props(1, 0));
+			long start = System.nanoTime();
+			List<Future<Object>> futures = new ArrayList<Future<Object>>();
+			for (int i = 0; i < taskCount; i++) {
+				Object deposit = new BankAccount.Deposit(depositAmt);
+				futures.add(aggregated ? ReplyAggregator.ask(aggregator,
+						account, deposit, t) : ask(account, deposit, t));
+			}
+			for (Object result : awaitAll(futures)) {
+				assertEquals(BankAccount.TransactionStatus.DONE, result);
+			}
+			long nanos = System.nanoTime() - start;
+			log.info(String.format("%s: %d deposits in %d ms, %.0f/s",
+					aggregated ? "aggregator" : "ask", taskCount,
+					TimeUnit.NANOSECONDS.toMillis(nanos), taskCount * 1e9
+							/ nanos));
+
+			BankAccount.Balance balance = (BankAccount.Balance) Await.result(
+					ReplyAggregator.ask(aggregator, account,
+							new BankAccount.BalanceRequest(7), t), d);
+			assertEquals(taskCount * depositAmt, balance.getAmount());
+			assertEquals(7, balance.getId());
+		}
+	}
+
+	@Test
+	public void testReplyAggregatorTimeout() throws Exception {
+		ActorRef aggregator = system.actorOf(ReplyAggregator.props());
+		ActorRef stalled = system.actorOf(Props.create(StalledAccount.class));
+		ActorRef account = system.actorOf(BankAccount.props(1, 10));
+		Timeout timeout = Timeout.durationToTimeout(Duration.create(100,
+				TimeUnit.MILLISECONDS));
+
+		Future<Object> lost = ReplyAggregator.ask(aggregator, stalled,
+				new BankAccount.Withdraw(1), timeout);
+		Future<Object> failed = ReplyAggregator.ask(aggregator, account,
+				new BankAccount.Withdraw(11, 3), timeout);
+		try {
+			Await.result(lost, d);
+			fail("expected a timeout");
+		} catch (AskTimeoutException e) {
+		}
+		BankAccount.TransactionResult result = (BankAccount.TransactionResult) Await
+				.result(failed, d);
+		assertEquals(3, result.getId());
+		assertEquals(BankAccount.TransactionStatus.FAILED, result.getStatus());
+	}
+
 	@Test
 	public void testSimultaneousDeposit() throws Exception {
 
@@ -154,7 +397,7 @@ public class UntypedActorBankAccountTest {
 						log.info("started deposits");
 						final ActorRef testRef = getRef();
 
-						final double depositAmt = 100;
+						final long depositAmt = 100;
 
 						List<Future<Object>> futures = new ArrayList<Future<Object>>();
 						for (int i = 0; i < taskCount; i++) {
@@ -171,11 +414,11 @@ public class UntypedActorBankAccountTest {
 							}
 							Future<Object> answer = ask(accountA,
 									new BankAccount.BalanceRequest(), t);
-							double balance = (Double) Await.result(answer, d);
+							long balance = ((BankAccount.Balance) Await.result(answer,
+									d)).getAmount();
 							// Validate the number of exec tasks
 							assertEquals(taskCount, futures.size());
-							assertEquals(futures.size() * depositAmt, balance,
-									1);
+							assertEquals(futures.size() * depositAmt, balance);
 						} catch (Exception e) {
 							e.printStackTrace();
 							fail(e.getMessage());
@@ -188,8 +431,424 @@ public class UntypedActorBankAccountTest {
 		};
 	}
 
+	/**
+	 * Deposits go straight into the hot account's cells without going
+	 * through its mailbox. Only the balance request is a message.
+	 */
+	@Test
+	public void testSimultaneousHotDeposit() throws Exception {
+		final DepositCells deposits = new DepositCells();
+		final ActorRef account = system.actorOf(HotBankAccount.props(1, 0,
+				deposits));
+		final long depositAmt = 100;
+
+		log.info("started hot deposits");
+		for (int i = 0; i < taskCount; i++) {
+			deposits.add(depositAmt);
+		}
+		Future<Object> answer = ask(account, new BankAccount.BalanceRequest(),
+				t);
+		long balance = ((BankAccount.Balance) Await.result(answer, d))
+				.getAmount();
+		assertEquals(taskCount * depositAmt, balance);
+		log.info("finished hot deposits");
+	}
+
+	/**
+	 * The balance lives in a memory mapped ledger, where it can be read
+	 * without asking the actor and is still there after reopening the file.
+	 */
+	@Test
+	public void testLedgerDeposit() throws Exception {
+		File file = File.createTempFile("ledger", ".dat");
+		file.delete();
+		try {
+			MappedLedger ledger = new MappedLedger(file, 10);
+			ActorRef account = system.actorOf(LedgerBankAccount.props(3,
+					ledger));
+			final long depositAmt = 100;
+
+			List<Future<Object>> futures = new ArrayList<Future<Object>>();
+			for (int i = 0; i < 1000; i++) {
+				futures.add(ask(account, new BankAccount.Deposit(depositAmt), t));
+			}
+			awaitAll(futures);
+			Future<Object> answer = ask(account,
+					new BankAccount.BalanceRequest(), t);
+			assertEquals(1000 * depositAmt,
+					((BankAccount.Balance) Await.result(answer, d)).getAmount());
+			assertEquals(1000 * depositAmt, new MappedLedger(file, 10).get(3));
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testBatch() throws Exception {
+		ActorRef account = system.actorOf(BankAccount.props(1, 0));
+		BankAccount.Batch batch = new BankAccount.Batch(new boolean[] { false,
+				true, true }, new long[] { 100, 30, 100 }, new long[] { 7, 8, 9 });
+
+		BankAccount.BatchResult result = (BankAccount.BatchResult) Await
+				.result(ask(account, batch, t), d);
+		assertEquals(3, result.size());
+		assertEquals(8, result.getId(1));
+		assertEquals(BankAccount.TransactionStatus.DONE, result.getStatus(0));
+		assertEquals(BankAccount.TransactionStatus.DONE, result.getStatus(1));
+		assertEquals(BankAccount.TransactionStatus.FAILED, result.getStatus(2));
+		assertEquals(70, result.getBalance());
+	}
+
+	/**
+	 * Same deposits as testSimultaneousDeposit, asked through a batcher that
+	 * sends them to the account in batches.
+	 */
+	@Test
+	public void testBatchedDeposit() throws Exception {
+		ActorRef account = system.actorOf(BankAccount.props(1, 0));
+		ActorRef batcher = system.actorOf(AccountBatcher.props(account, 256,
+				Duration.create(1, TimeUnit.MILLISECONDS)));
+		final long depositAmt = 100;
+
+		log.info("started batched deposits");
+		long start = System.nanoTime();
+		List<Future<Object>> futures = new ArrayList<Future<Object>>();
+		for (int i = 0; i < taskCount; i++) {
+			futures.add(ask(batcher, new BankAccount.Deposit(depositAmt), t));
+		}
+		for (Object result : awaitAll(futures)) {
+			assertEquals(BankAccount.TransactionStatus.DONE, result);
+		}
+		long elapsed = System.nanoTime() - start;
+
+		Future<Object> answer = ask(batcher, new BankAccount.BalanceRequest(),
+				t);
+		long balance = ((BankAccount.Balance) Await.result(answer, d))
+				.getAmount();
+		assertEquals(taskCount * depositAmt, balance);
+		log.info(String.format("batched deposits: %d deposits/s", taskCount
+				* 1000000000L / elapsed));
+	}
+
+	/**
+	 * A batch the account does not answer within the timeout is dropped, so
+	 * its result arriving later is not passed on.
+	 */
+	@Test
+	public void testBatchTimeout() throws Exception {
+		new JavaTestKit(system) {
+			{
+				JavaTestKit account = new JavaTestKit(system);
+				ActorRef batcher = system.actorOf(AccountBatcher.props(
+						account.getRef(), 1, duration("1 second"),
+						duration("200 milliseconds")));
+				batcher.tell(new BankAccount.Deposit(5), getRef());
+				BankAccount.Batch batch = account
+						.expectMsgClass(BankAccount.Batch.class);
+
+				expectNoMsg(duration("500 milliseconds"));
+				batcher.tell(new BankAccount.BatchResult(new long[] { batch
+						.getId(0) }, new boolean[] { true }, 5), account.getRef());
+				expectNoMsg(duration("200 milliseconds"));
+			}
+		};
+	}
+
+	/**
+	 * Many accounts addressed by number through a gateway of a few shards,
+	 * instead of an actor per account.
+	 */
+	@Test
+	public void testShardedAccounts() throws Exception {
+		final int accounts = 10000;
+		ActorRef gateway = system.actorOf(AccountShard.gateway(4));
+
+		long start = System.nanoTime();
+		List<Future<Object>> futures = new ArrayList<Future<Object>>();
+		for (int i = 0; i < taskCount; i++) {
+			futures.add(ask(gateway, new AccountShard.Envelope(i % accounts,
+					new BankAccount.Deposit(i % accounts)), t));
+		}
+		for (Object result : awaitAll(futures)) {
+			assertEquals(BankAccount.TransactionStatus.DONE, result);
+		}
+		long elapsed = System.nanoTime() - start;
+		log.info(String.format("sharded deposits: %d deposits/s", taskCount
+				* 1000000000L / elapsed));
+
+		long perAccount = taskCount / accounts;
+		assertEquals(BankAccount.TransactionStatus.DONE, Await.result(
+				ask(gateway, new AccountShard.Envelope(42,
+						new BankAccount.Withdraw(42 * perAccount)), t), d));
+		assertEquals(BankAccount.TransactionStatus.FAILED, Await.result(
+				ask(gateway, new AccountShard.Envelope(43,
+						new BankAccount.Withdraw(43 * perAccount + 1)), t), d));
+		assertEquals(BankAccount.TransactionStatus.FAILED, Await.result(
+				ask(gateway, new AccountShard.Envelope(accounts,
+						new BankAccount.Withdraw(1)), t), d));
+		for (int account : new int[] { 0, 42, 43, accounts - 1 }) {
+			long balance = ((BankAccount.Balance) Await.result(
+					ask(gateway, new AccountShard.Envelope(account,
+							new BankAccount.BalanceRequest()), t), d))
+					.getAmount();
+			assertEquals(account == 42 ? 0 : account * perAccount, balance);
+		}
+	}
+
+	/**
+	 * Account numbers that only differ in their high bits, in one shard.
+	 * They must not all probe from the same slot.
+	 */
+	@Test
+	public void testStridedAccounts() throws Exception {
+		final int accounts = 20000;
+		final int stride = 1 << 16;
+		ActorRef shard = system.actorOf(AccountShard.props());
+
+		long start = System.nanoTime();
+		List<Future<Object>> futures = new ArrayList<Future<Object>>();
+		for (int i = 0; i < accounts; i++) {
+			futures.add(ask(shard, new AccountShard.Envelope(i * stride,
+					new BankAccount.Deposit(i)), t));
+		}
+		for (Object result : awaitAll(futures)) {
+			assertEquals(BankAccount.TransactionStatus.DONE, result);
+		}
+		long elapsed = System.nanoTime() - start;
+		log.info(String.format("strided deposits: %d deposits/s", accounts
+				* 1000000000L / elapsed));
+
+		int account = 12345;
+		long balance = ((BankAccount.Balance) Await.result(
+				ask(shard, new AccountShard.Envelope(account * stride,
+						new BankAccount.BalanceRequest()), t), d)).getAmount();
+		assertEquals(account, balance);
+	}
+
+	/**
+	 * Deposit burst against one account, first with nothing limiting the asks
+	 * outstanding, then with a bounded mailbox and a max in flight limit.
+	 * Logs the heap in use once every deposit has been sent, and the latency
+	 * of the deposits.
+	 */
+	@Test
+	public void testOverload() throws Exception {
+		ActorRef unbounded = system.actorOf(BankAccount.props(1, 0));
+		overload("unlimited", unbounded, null);
+
+		ActorRef bounded = system.actorOf(BankAccount.boundedProps(2, 0));
+		InFlightLimiter limiter = new InFlightLimiter(bounded, 500, t,
+				system.dispatcher());
+		overload("max 500 in flight", bounded, limiter);
+		// the permits are released by callbacks that can run after the
+		// replies are awaited
+		final InFlightLimiter released = limiter;
+		new JavaTestKit(system) {
+			{
+				new AwaitCond(duration("5 seconds")) {
+					protected boolean cond() {
+						return released.available() == 500;
+					}
+				};
+			}
+		};
+	}
+
+	private void overload(String name, ActorRef account,
+			InFlightLimiter limiter) throws Exception {
+		final long depositAmt = 100;
+		final AtomicLong totalLatency = new AtomicLong();
+		final AtomicLong maxLatency = new AtomicLong();
+		final AtomicLong measured = new AtomicLong();
+		ExecutionContext ec = system.dispatcher();
+
+		System.gc();
+		Runtime runtime = Runtime.getRuntime();
+		long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+		long start = System.nanoTime();
+		List<Future<Object>> futures = new ArrayList<Future<Object>>();
+		for (int i = 0; i < taskCount; i++) {
+			final long sent = System.nanoTime();
+			Object deposit = new BankAccount.Deposit(depositAmt);
+			Future<Object> future = limiter == null ? ask(account, deposit, t)
+					: limiter.ask(deposit);
+			future.onComplete(new OnComplete<Object>() {
+				@Override
+				public void onComplete(Throwable failure, Object result) {
+					long latency = System.nanoTime() - sent;
+					totalLatency.addAndGet(latency);
+					long max = maxLatency.get();
+					while (latency > max
+							&& !maxLatency.compareAndSet(max, latency)) {
+						max = maxLatency.get();
+					}
+					measured.incrementAndGet();
+				}
+			}, ec);
+			futures.add(future);
+		}
+		long heapSent = runtime.totalMemory() - runtime.freeMemory();
+		for (Object result : awaitAll(futures)) {
+			assertEquals(BankAccount.TransactionStatus.DONE, result);
+		}
+		long elapsed = System.nanoTime() - start;
+
+		long balance = ((BankAccount.Balance) Await.result(
+				ask(account, new BankAccount.BalanceRequest(), t), d))
+				.getAmount();
+		assertEquals(taskCount * depositAmt, balance);
+		// the latency callbacks can run after the replies are awaited
+		new JavaTestKit(system) {
+			{
+				new AwaitCond(duration("5 seconds")) {
+					protected boolean cond() {
+						return measured.get() == taskCount;
+					}
+				};
+			}
+		};
+		log.info(String.format(
+				"%s: %d deposits/s, heap grew %d KB while sending, "
+						+ "latency avg %d us max %d us", name, taskCount
+						* 1000000000L / elapsed, (heapSent - heapBefore) / 1024,
+				totalLatency.get() / taskCount / 1000,
+				maxLatency.get() / 1000));
+	}
+
+	/**
+	 * Deposits journaled by a persistent account are there after it is
+	 * restarted. Logs deposits per second without persistence, with group
+	 * commit, and with a force for every deposit.
+	 */
+	@Test
+	public void testPersistentDeposit() throws Exception {
+		File directory = File.createTempFile("journal", "");
+		directory.delete();
+		try {
+			final long depositAmt = 100;
+			long plain = deposits(system.actorOf(BankAccount.props(1, 0)),
+					taskCount, depositAmt);
+
+			final ActorRef account = system.actorOf(PersistentBankAccount.props(1,
+					directory));
+			long grouped = deposits(account, taskCount, depositAmt);
+			assertEquals(BankAccount.TransactionStatus.FAILED, Await.result(
+					ask(account, new BankAccount.Withdraw(taskCount
+							* depositAmt + 1), t), d));
+			assertEquals(BankAccount.TransactionStatus.DONE, Await.result(
+					ask(account, new BankAccount.Withdraw(depositAmt), t), d));
+			stop(account);
+
+			int forcedCount = 1000;
+			ActorRef restarted = system.actorOf(PersistentBankAccount.props(
+					1, directory, 1));
+			long forced = deposits(restarted, forcedCount, depositAmt);
+			long balance = ((BankAccount.Balance) Await.result(
+					ask(restarted, BankAccount.BALANCE_REQUEST, t), d))
+					.getAmount();
+			assertEquals((taskCount - 1 + forcedCount) * depositAmt, balance);
+
+			log.info(String.format(
+					"deposits/s: in memory %d, journaled with group commit %d, "
+							+ "journaled with a force each %d", plain,
+					grouped, forced));
+			// the journal is committed once the account has stopped
+			stop(restarted);
+		} finally {
+			for (File file : directory.listFiles()) {
+				file.delete();
+			}
+			directory.delete();
+		}
+	}
+
+	/**
+	 * A persistent account restarted after snapshots only replays the
+	 * journal events after the last one.
+	 */
+	@Test
+	public void testPersistentSnapshot() throws Exception {
+		File directory = File.createTempFile("journal", "");
+		directory.delete();
+		try {
+			final ActorRef account = system.actorOf(PersistentBankAccount
+					.props(1, directory, 100, 1000));
+			deposits(account, 2500, 10);
+			stop(account);
+			assertTrue(new File(directory, PersistentBankAccount.SNAPSHOT)
+					.exists());
+
+			ActorRef restarted = system.actorOf(PersistentBankAccount.props(
+					1, directory));
+			long balance = ((BankAccount.Balance) Await.result(
+					ask(restarted, BankAccount.BALANCE_REQUEST, t), d))
+					.getAmount();
+			assertEquals(25000, balance);
+			stop(restarted);
+		} finally {
+			for (File file : directory.listFiles()) {
+				file.delete();
+			}
+			directory.delete();
+		}
+	}
+
+	/**
+	 * Stop the actor and wait until it has.
+	 */
+	private void stop(final ActorRef actor) {
+		new JavaTestKit(system) {
+			{
+				watch(actor);
+				system.stop(actor);
+				expectTerminated(actor);
+			}
+		};
+	}
+
+	/**
+	 * @return deposits per second
+	 */
+	private long deposits(ActorRef account, int count, long amount)
+			throws Exception {
+		long start = System.nanoTime();
+		List<Future<Object>> futures = new ArrayList<Future<Object>>();
+		for (int i = 0; i < count; i++) {
+			futures.add(ask(account, BankAccount.Deposit.of(amount), t));
+		}
+		for (Object result : awaitAll(futures)) {
+			assertEquals(BankAccount.TransactionStatus.DONE, result);
+		}
+		return count * 1000000000L / (System.nanoTime() - start);
+	}
+
 	@Test
 	public void testTransfer() {
+		// accountB is funded too, as a txfr from it can run before the ones
+		// into it and a withdraw without funds fails
+		ActorRef accountA = system.actorOf(BankAccount.props(1, 0));
+		ActorRef accountB = system.actorOf(BankAccount.props(2,
+				taskCount * 100));
+
+		runTellers(Props.create(BankTeller.class, accountA, accountB));
+	}
+
+	/**
+	 * Same txfrs as testTransfer, run by a small pool of long lived
+	 * coordinators instead of one BankTransfer actor per txfr.
+	 */
+	@Test
+	public void testTransferCoordinator() {
+		ActorRef accountA = system.actorOf(BankAccount.props(1, 0));
+		ActorRef accountB = system.actorOf(BankAccount.props(2,
+				taskCount * 100));
+		ActorRef coordinator = system.actorOf(TransferCoordinator.pool(2));
+
+		runTellers(Props.create(BankTeller.class, accountA, accountB,
+				coordinator));
+	}
+
+	private void runTellers(final Props props) {
 		/*
 		 * Wrap the whole test procedure within a testkit constructor if you
 		 * want to receive actor replies or use Within(), etc.
@@ -198,12 +857,6 @@ public class UntypedActorBankAccountTest {
 
 			{
 
-				ActorRef accountA = system.actorOf(BankAccount.props(1, 0));
-				ActorRef accountB = system.actorOf(BankAccount.props(2, 0));
-
-				final Props props = Props.create(BankTeller.class, accountA,
-						accountB);
-
 				final Map<ActorRef, JavaTestKit> tellers = new HashMap<ActorRef, JavaTestKit>();
 
 				for (int i = 0; i < numTellers; i++) {
@@ -0,0 +1,115 @@
+package com.cerner.devcon.bank;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The deposit and withdraw races from {@link BankAccountTest} against the
+ * lock free account, run on several threads.
+ *
+ */
+public class AtomicBankAccountTest {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(AtomicBankAccountTest.class);
+
+	private static int taskCount = 100000;
+	private static int threadCount = 4;
+
+	private static ExecutorService executorService;
+
+	@BeforeClass
+	public static void init() throws Exception {
+		executorService = Executors.newFixedThreadPool(threadCount);
+	}
+
+	@AfterClass
+	public static void destroy() throws Exception {
+		executorService.shutdown();
+	}
+
+	/**
+	 * No deposit is lost, so the total is exact.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testSimultaneousDeposit() throws Exception {
+		final AtomicBankAccount account = new AtomicBankAccount(1);
+		final long depositAmt = 100;
+
+		long start = System.nanoTime();
+		int deposits = executeTasks(new Callable<Integer>() {
+			@Override
+			public Integer call() {
+				int done = 0;
+				for (int i = 0; i < taskCount / threadCount; i++) {
+					if (account.deposit(depositAmt)) {
+						done++;
+					}
+				}
+				return done;
+			}
+		});
+		long elapsed = System.nanoTime() - start;
+
+		assertEquals(taskCount, deposits);
+		assertEquals(taskCount * depositAmt, account.balance());
+		log.info(deposits * 1000000000L / elapsed + " deposits/s on "
+				+ threadCount + " threads");
+	}
+
+	/**
+	 * Competing withdrawals never overdraw the account.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testSimultaneousWithdraw() throws Exception {
+		final long startingBalance = taskCount / 2;
+		final AtomicBankAccount account = new AtomicBankAccount(1);
+		account.deposit(startingBalance);
+
+		int withdrawals = executeTasks(new Callable<Integer>() {
+			@Override
+			public Integer call() {
+				int done = 0;
+				for (int i = 0; i < taskCount / threadCount; i++) {
+					if (account.withdraw(1)) {
+						done++;
+					}
+				}
+				return done;
+			}
+		});
+
+		assertEquals(startingBalance, withdrawals);
+		assertEquals(0, account.balance());
+		assertFalse(account.withdraw(1));
+		assertFalse(account.deposit(-1));
+	}
+
+	private int executeTasks(Callable<Integer> task) throws Exception {
+		List<Callable<Integer>> tasks = Collections.nCopies(threadCount, task);
+		List<java.util.concurrent.Future<Integer>> futures = executorService
+				.invokeAll(tasks);
+		int total = 0;
+		// Throws an exception if an exception was thrown by the task.
+		for (java.util.concurrent.Future<Integer> future : futures) {
+			total += future.get();
+		}
+		return total;
+	}
+
+}
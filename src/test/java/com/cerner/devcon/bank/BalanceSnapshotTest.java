@@ -0,0 +1,285 @@
+package com.cerner.devcon.bank;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Snapshots of the balances and recovery from a snapshot plus the journal
+ * tail.
+ *
+ */
+public class BalanceSnapshotTest {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(BalanceSnapshotTest.class);
+
+	private static int[] accountCounts = { 100000, 1000000, 4000000 };
+	private static int tailCount = 100000;
+	private static int threadCount = 4;
+
+	private static ExecutorService executorService;
+
+	private File directory;
+
+	@BeforeClass
+	public static void init() throws Exception {
+		executorService = Executors.newFixedThreadPool(threadCount);
+	}
+
+	@AfterClass
+	public static void destroy() throws Exception {
+		executorService.shutdown();
+	}
+
+	@Before
+	public void createDirectory() throws IOException {
+		directory = File.createTempFile("snapshot", "");
+		directory.delete();
+		directory.mkdirs();
+	}
+
+	@After
+	public void deleteDirectory() {
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void testWriteAndLoadInChunks() throws Exception {
+		long[] balances = new long[1001];
+		for (int i = 0; i < balances.length; i++) {
+			balances[i] = i * 3L - 7;
+		}
+		File file = new File(directory, "snapshot");
+		BalanceSnapshot.write(file, balances, balances.length, 42);
+
+		HeapBalanceStore loaded = new HeapBalanceStore(2000);
+		assertEquals(42, BalanceSnapshot.load(file, loaded, executorService, 7));
+		for (int i = 0; i < balances.length; i++) {
+			assertEquals(balances[i], loaded.get(i));
+		}
+		assertEquals(0, loaded.get(1001));
+	}
+
+	@Test
+	public void testReplaceSnapshot() throws Exception {
+		File file = new File(directory, "snapshot");
+		BalanceSnapshot.write(file, new long[] { 1, 2 }, 2, 10);
+		BalanceSnapshot.write(file, new long[] { 3, 4 }, 2, 20);
+
+		HeapBalanceStore loaded = new HeapBalanceStore(2);
+		assertEquals(20, BalanceSnapshot.load(file, loaded));
+		assertEquals(4, loaded.get(1));
+		assertFalse(new File(directory, "snapshot.tmp").exists());
+	}
+
+	@Test(expected = IOException.class)
+	public void testTooManyAccounts() throws Exception {
+		File file = new File(directory, "snapshot");
+		BalanceSnapshot.write(file, new long[10], 10, 0);
+		BalanceSnapshot.load(file, new HeapBalanceStore(9));
+	}
+
+	/**
+	 * A journaled registry rebuilt from its snapshot and the events after it
+	 * has the same balances, and the journal before the snapshot is gone.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testRegistryRecovery() throws Exception {
+		int capacity = 1000;
+		File journalDirectory = new File(directory, "journal");
+		File snapshot = new File(directory, "snapshot");
+		MappedJournal journal = new MappedJournal(journalDirectory,
+				100 * MappedJournal.RECORD_SIZE);
+		StripedAccountRegistry registry = new StripedAccountRegistry(
+				new HeapBalanceStore(capacity), 16, journal);
+
+		Random random = new Random(1);
+		for (int i = 0; i < 5000; i++) {
+			apply(registry, random, capacity);
+		}
+		long position = registry.snapshot(snapshot);
+		assertEquals(journal.position(), position);
+		for (int i = 0; i < 500; i++) {
+			apply(registry, random, capacity);
+		}
+		registry.force();
+		assertTrue(journalDirectory.listFiles().length < position / 100);
+
+		StripedAccountRegistry recovered = StripedAccountRegistry.recover(
+				snapshot, new MappedJournal(journalDirectory,
+						100 * MappedJournal.RECORD_SIZE), capacity, 16,
+				executorService, threadCount);
+		for (int i = 0; i < capacity; i++) {
+			assertEquals(registry.balance(i), recovered.balance(i));
+		}
+	}
+
+	private static void apply(StripedAccountRegistry registry, Random random,
+			int capacity) {
+		int account = random.nextInt(capacity);
+		switch (random.nextInt(3)) {
+		case 0:
+			registry.deposit(account, random.nextInt(1000));
+			break;
+		case 1:
+			registry.withdraw(account, random.nextInt(1000));
+			break;
+		default:
+			registry.transfer(account, random.nextInt(1000),
+					random.nextInt(capacity));
+		}
+	}
+
+	/**
+	 * Scheduled snapshots keep running after one fails: first while the
+	 * balances throw, then while the snapshot's directory is missing, and
+	 * they write the snapshot once it is there.
+	 */
+	@Test
+	public void testScheduledSnapshotFailure() throws Exception {
+		FailingStore store = new FailingStore(10);
+		StripedAccountRegistry registry = new StripedAccountRegistry(store, 4);
+		registry.deposit(3, 30);
+		File later = new File(directory, "later");
+		File snapshot = new File(later, "snapshot");
+		ScheduledExecutorService executor = Executors
+				.newSingleThreadScheduledExecutor();
+		try {
+			store.failing = true;
+			ScheduledFuture<?> snapshots = registry.scheduleSnapshots(
+					executor, snapshot, 20, TimeUnit.MILLISECONDS);
+			// a runtime exception from the copy
+			awaitAttempts(store, 2);
+			store.failing = false;
+			// an IOException from writing the file
+			awaitAttempts(store, store.attempts.get() + 2);
+			assertFalse(snapshots.isDone());
+			assertFalse(snapshot.exists());
+
+			later.mkdirs();
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			while (!snapshot.exists() && System.nanoTime() < deadline) {
+				Thread.sleep(10);
+			}
+			snapshots.cancel(false);
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(5, TimeUnit.SECONDS);
+		}
+
+		HeapBalanceStore loaded = new HeapBalanceStore(10);
+		BalanceSnapshot.load(snapshot, loaded);
+		assertEquals(30, loaded.get(3));
+		for (File file : later.listFiles()) {
+			file.delete();
+		}
+		later.delete();
+	}
+
+	private static void awaitAttempts(FailingStore store, int attempts)
+			throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (store.attempts.get() < attempts) {
+			assertTrue("snapshots stopped", System.nanoTime() < deadline);
+			Thread.sleep(10);
+		}
+	}
+
+	/**
+	 * Counts the snapshots that copy account 0, and can fail them.
+	 */
+	private static class FailingStore extends HeapBalanceStore {
+		final AtomicInteger attempts = new AtomicInteger();
+		volatile boolean failing;
+
+		FailingStore(int capacity) {
+			super(capacity);
+		}
+
+		@Override
+		public long get(int accountNumber) {
+			if (accountNumber == 0) {
+				attempts.incrementAndGet();
+				if (failing) {
+					throw new IllegalStateException("balances unavailable");
+				}
+			}
+			return super.get(accountNumber);
+		}
+	}
+
+	/**
+	 * Time to recover a registry from a snapshot and a tail of tailCount
+	 * events, as the number of accounts grows, loading the snapshot in one
+	 * chunk and in threadCount chunks.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testStartupTime() throws Exception {
+		for (int accounts : accountCounts) {
+			File journalDirectory = new File(directory, "journal" + accounts);
+			File snapshot = new File(directory, "snapshot" + accounts);
+			MappedJournal journal = new MappedJournal(journalDirectory);
+			StripedAccountRegistry registry = new StripedAccountRegistry(
+					new HeapBalanceStore(accounts),
+					StripedAccountRegistry.DEFAULT_STRIPES, journal);
+			for (int i = 0; i < accounts; i++) {
+				registry.deposit(i, i);
+			}
+			registry.snapshot(snapshot);
+			for (int i = 0; i < tailCount; i++) {
+				registry.transfer(i % accounts, 1, (i + 1) % accounts);
+			}
+			registry.force();
+
+			long start = System.nanoTime();
+			StripedAccountRegistry serial = StripedAccountRegistry.recover(
+					snapshot, new MappedJournal(journalDirectory), accounts,
+					StripedAccountRegistry.DEFAULT_STRIPES, null, 1);
+			long serialMillis = (System.nanoTime() - start) / 1000000;
+
+			start = System.nanoTime();
+			StripedAccountRegistry parallel = StripedAccountRegistry.recover(
+					snapshot, new MappedJournal(journalDirectory), accounts,
+					StripedAccountRegistry.DEFAULT_STRIPES, executorService,
+					threadCount);
+			long parallelMillis = (System.nanoTime() - start) / 1000000;
+
+			assertEquals(registry.balance(accounts - 1),
+					serial.balance(accounts - 1));
+			assertEquals(registry.balance(0), parallel.balance(0));
+			log.info(String.format("%d accounts + %d events: startup %d ms, "
+					+ "%d ms loading in %d chunks", accounts, tailCount,
+					serialMillis, parallelMillis, threadCount));
+
+			for (File file : journalDirectory.listFiles()) {
+				file.delete();
+			}
+			journalDirectory.delete();
+		}
+	}
+
+}
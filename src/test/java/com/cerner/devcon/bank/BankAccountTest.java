@@ -46,7 +46,7 @@ public class BankAccountTest {
 	public void testSimultaneousDeposit() throws Exception {
 		// Create a bank account
 		final BankAccount account = new BankAccount();
-		final double depositAmt = 100;
+		final long depositAmt = 100;
 
 		Callable<Boolean> task = new Callable<Boolean>() {
 			@Override
@@ -64,7 +64,7 @@ public class BankAccountTest {
 		// A smaller number than expected means some threads didn't see the
 		// right starting balance.
 		assertEquals(results.size() * depositAmt,
-				account.accountBalance, 1);
+				account.accountBalance);
 
 	}
 
@@ -77,11 +77,11 @@ public class BankAccountTest {
 	@Test
 	public void testSimultaneousTransfer() throws Exception {
 		// Start with a big enough balance to cover the txfrs
-		final double startingBalance = 10 * taskCount;
+		final long startingBalance = 10 * taskCount;
 		final BankAccount from = new BankAccount();
 		from.deposit(startingBalance);
 		final BankAccount to = new BankAccount();
-		final double transferAmt = 1;
+		final long transferAmt = 1;
 
 		// Create a task to transfer once
 		Callable<Boolean> task = new Callable<Boolean>() {
@@ -100,8 +100,8 @@ public class BankAccountTest {
 		// Validate that the ending balance is equal to the starting balance
 		// minus or plus the amount transferred
 		assertEquals(startingBalance - (results.size() * transferAmt),
-				from.accountBalance, .5);
-		assertEquals(results.size() * transferAmt, to.accountBalance, .5);
+				from.accountBalance);
+		assertEquals(results.size() * transferAmt, to.accountBalance);
 
 	}
 
@@ -115,12 +115,12 @@ public class BankAccountTest {
 	public void testSimultaneousTransferSynch() throws Exception {
 
 		// Start with a big enough balance to cover the txfrs
-		final double startingBalance = 10 * taskCount;
+		final long startingBalance = 10 * taskCount;
 		final BankAccount from = new BankAccount();
 		from.deposit(startingBalance);
 		final BankAccount to = new BankAccount();
 		to.deposit(startingBalance);
-		final double transferAmt = 1;
+		final long transferAmt = 1;
 
 		// Create a task to transfer an amount by locking the two accounts
 		Callable<Boolean> task = new Callable<Boolean>() {
@@ -157,8 +157,8 @@ public class BankAccountTest {
 		}
 		// Validate that the ending balance of both accounts is the same as the
 		// starting balance
-		assertEquals(startingBalance, from.accountBalance, .5);
-		assertEquals(startingBalance, to.accountBalance, .5);
+		assertEquals(startingBalance, from.accountBalance);
+		assertEquals(startingBalance, to.accountBalance);
 
 	}
 
@@ -0,0 +1,115 @@
+package com.cerner.devcon.bank;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Concurrent deposits into a hot account, with and without withdrawals
+ * mixed in.
+ *
+ */
+public class HotBankAccountTest {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(HotBankAccountTest.class);
+
+	private static int taskCount = 100000;
+	private static int threadCount = 4;
+
+	private static ExecutorService executorService;
+
+	@BeforeClass
+	public static void init() throws Exception {
+		executorService = Executors.newFixedThreadPool(threadCount);
+	}
+
+	@AfterClass
+	public static void destroy() throws Exception {
+		executorService.shutdown();
+	}
+
+	@Test
+	public void testSimultaneousDeposit() throws Exception {
+		final HotBankAccount account = new HotBankAccount(1);
+		final long depositAmt = 100;
+
+		List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+		for (int t = 0; t < threadCount; t++) {
+			tasks.add(new Callable<Integer>() {
+				@Override
+				public Integer call() {
+					int done = 0;
+					for (int i = 0; i < taskCount / threadCount; i++) {
+						if (account.deposit(depositAmt)) {
+							done++;
+						}
+					}
+					return done;
+				}
+			});
+		}
+
+		long start = System.nanoTime();
+		assertEquals(taskCount, sum(executorService.invokeAll(tasks)));
+		long elapsed = System.nanoTime() - start;
+
+		assertEquals(taskCount * depositAmt, account.balance());
+		log.info(taskCount * 1000000000L / elapsed + " deposits/s on "
+				+ threadCount + " threads");
+	}
+
+	/**
+	 * Withdrawals racing with deposits see every deposit exactly once.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testDepositsAndWithdrawals() throws Exception {
+		final HotBankAccount account = new HotBankAccount(1);
+
+		List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+		for (int t = 0; t < threadCount; t++) {
+			final boolean depositor = t % 2 == 0;
+			tasks.add(new Callable<Integer>() {
+				@Override
+				public Integer call() {
+					int withdrawn = 0;
+					for (int i = 0; i < taskCount / threadCount; i++) {
+						if (depositor) {
+							account.deposit(2);
+						} else if (account.withdraw(1)) {
+							withdrawn++;
+						}
+					}
+					return withdrawn;
+				}
+			});
+		}
+		int withdrawn = sum(executorService.invokeAll(tasks));
+
+		long deposited = 2L * (threadCount / 2) * (taskCount / threadCount);
+		assertEquals(deposited - withdrawn, account.balance());
+		assertFalse(account.deposit(-1));
+	}
+
+	private static int sum(List<java.util.concurrent.Future<Integer>> futures)
+			throws Exception {
+		int total = 0;
+		for (java.util.concurrent.Future<Integer> future : futures) {
+			total += future.get();
+		}
+		return total;
+	}
+
+}
@@ -0,0 +1,168 @@
+package com.cerner.devcon.bank;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Events appended to memory mapped journal segments.
+ *
+ */
+public class MappedJournalTest {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(MappedJournalTest.class);
+
+	private static int eventCount = 1000000;
+	private static int forcedEventCount = 1000;
+
+	private File directory;
+
+	@Before
+	public void createDirectory() throws IOException {
+		directory = File.createTempFile("journal", "");
+		directory.delete();
+	}
+
+	@After
+	public void deleteDirectory() {
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	/**
+	 * Events span several segments and are all replayed, in order, after the
+	 * journal is opened again; appends then continue after the last event.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testReplayAcrossSegments() throws Exception {
+		int segmentSize = 10 * MappedJournal.RECORD_SIZE;
+		MappedJournal journal = new MappedJournal(directory, segmentSize);
+		for (int i = 0; i < 25; i++) {
+			journal.append(MappedJournal.DEPOSIT, i, i * 10);
+		}
+		journal.force();
+		assertEquals(3, directory.listFiles().length);
+
+		MappedJournal reopened = new MappedJournal(directory, segmentSize);
+		reopened.append(MappedJournal.WITHDRAW, 7, 5);
+		final long[] next = new long[1];
+		final long[] balance = new long[1];
+		long events = reopened.replay(new MappedJournal.Visitor() {
+			@Override
+			public void event(int type, int accountNumber, long amount) {
+				if (type == MappedJournal.DEPOSIT) {
+					assertEquals(next[0], accountNumber);
+					assertEquals(next[0] * 10, amount);
+					next[0]++;
+					balance[0] += amount;
+				} else {
+					assertEquals(MappedJournal.WITHDRAW, type);
+					assertEquals(7, accountNumber);
+					balance[0] -= amount;
+				}
+			}
+		});
+		assertEquals(26, events);
+		assertEquals(25, next[0]);
+		assertEquals(3000 - 5, balance[0]);
+	}
+
+	/**
+	 * Replay from a position skips the events before it, and the segments
+	 * before it can be deleted.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testReplayTail() throws Exception {
+		MappedJournal journal = new MappedJournal(directory,
+				10 * MappedJournal.RECORD_SIZE);
+		for (int i = 0; i < 25; i++) {
+			journal.append(MappedJournal.DEPOSIT, i, 1);
+		}
+		assertEquals(25, journal.position());
+		assertEquals(2, journal.deleteBefore(23));
+		assertEquals(1, directory.listFiles().length);
+
+		final long[] first = { -1 };
+		long events = journal.replay(23, new MappedJournal.Visitor() {
+			@Override
+			public void event(int type, int accountNumber, long amount) {
+				if (first[0] < 0) {
+					first[0] = accountNumber;
+				}
+			}
+		});
+		assertEquals(2, events);
+		assertEquals(23, first[0]);
+		assertEquals(25, new MappedJournal(directory,
+				10 * MappedJournal.RECORD_SIZE).position());
+	}
+
+	@Test(expected = IOException.class)
+	public void testReplayDeleted() throws Exception {
+		MappedJournal journal = new MappedJournal(directory,
+				10 * MappedJournal.RECORD_SIZE);
+		for (int i = 0; i < 25; i++) {
+			journal.append(MappedJournal.DEPOSIT, i, 1);
+		}
+		journal.deleteBefore(20);
+		journal.replay(new MappedJournal.Visitor() {
+			@Override
+			public void event(int type, int accountNumber, long amount) {
+			}
+		});
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownType() throws Exception {
+		new MappedJournal(directory).append(0, 1, 1);
+	}
+
+	/**
+	 * Appends forced in groups against appends forced one at a time.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testGroupCommitThroughput() throws Exception {
+		MappedJournal journal = new MappedJournal(directory);
+		long start = System.nanoTime();
+		for (int i = 0; i < eventCount; i++) {
+			journal.append(MappedJournal.DEPOSIT, 1, 1);
+			if (i % 1000 == 999) {
+				journal.force();
+			}
+		}
+		journal.force();
+		long grouped = eventCount * 1000000000L / (System.nanoTime() - start);
+
+		start = System.nanoTime();
+		for (int i = 0; i < forcedEventCount; i++) {
+			journal.append(MappedJournal.DEPOSIT, 1, 1);
+			journal.force();
+		}
+		long single = forcedEventCount * 1000000000L
+				/ (System.nanoTime() - start);
+
+		log.info(String.format(
+				"journal: %d events/s forced per 1000, %d events/s forced each",
+				grouped, single));
+	}
+
+}
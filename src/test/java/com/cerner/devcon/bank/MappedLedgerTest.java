@@ -0,0 +1,134 @@
+package com.cerner.devcon.bank;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Balances kept in a memory mapped file.
+ *
+ */
+public class MappedLedgerTest {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(MappedLedgerTest.class);
+
+	private static int accountCount = 1000000;
+	private static int taskCount = 1000000;
+	private static int threadCount = 4;
+
+	private static ExecutorService executorService;
+
+	private File file;
+
+	@BeforeClass
+	public static void init() throws Exception {
+		executorService = Executors.newFixedThreadPool(threadCount);
+	}
+
+	@AfterClass
+	public static void destroy() throws Exception {
+		executorService.shutdown();
+	}
+
+	@Before
+	public void createFile() throws IOException {
+		file = File.createTempFile("ledger", ".dat");
+		file.delete();
+	}
+
+	@After
+	public void deleteFile() {
+		file.delete();
+	}
+
+	/**
+	 * Balances written by one ledger are there when the file is opened
+	 * again, without loading anything.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testReopen() throws Exception {
+		MappedLedger ledger = new MappedLedger(file, 100);
+		ledger.set(0, 10);
+		ledger.add(99, 25);
+		assertTrue(ledger.compareAndSet(42, 0, 7));
+		assertFalse(ledger.compareAndSet(42, 0, 8));
+		ledger.flush();
+
+		MappedLedger reopened = new MappedLedger(file, 100);
+		assertEquals(10, reopened.get(0));
+		assertEquals(25, reopened.get(99));
+		assertEquals(7, reopened.get(42));
+		assertEquals(0, reopened.get(1));
+	}
+
+	@Test(expected = IOException.class)
+	public void testWrongCapacity() throws Exception {
+		new MappedLedger(file, 100);
+		new MappedLedger(file, 200);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownAccount() throws Exception {
+		new MappedLedger(file, 100).get(100);
+	}
+
+	/**
+	 * The striped registry running random transfers on top of the mapped
+	 * ledger.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testRegistryTransfers() throws Exception {
+		MappedLedger ledger = new MappedLedger(file, accountCount);
+		final StripedAccountRegistry registry = new StripedAccountRegistry(
+				ledger, StripedAccountRegistry.DEFAULT_STRIPES);
+		for (int i = 0; i < accountCount; i++) {
+			registry.deposit(i, 100);
+		}
+
+		Callable<Void> task = new Callable<Void>() {
+			@Override
+			public Void call() {
+				java.util.Random random = new java.util.Random();
+				for (int i = 0; i < taskCount / threadCount; i++) {
+					registry.transfer(random.nextInt(accountCount), 1,
+							random.nextInt(accountCount));
+				}
+				return null;
+			}
+		};
+		long start = System.nanoTime();
+		for (java.util.concurrent.Future<Void> future : executorService
+				.invokeAll(Collections.nCopies(threadCount, task))) {
+			future.get();
+		}
+		long elapsed = System.nanoTime() - start;
+
+		MappedLedger reopened = new MappedLedger(file, accountCount);
+		long total = 0;
+		for (int i = 0; i < accountCount; i++) {
+			total += reopened.get(i);
+		}
+		assertEquals(100L * accountCount, total);
+		log.info(taskCount * 1000000000L / elapsed
+				+ " txfrs/s on the mapped ledger");
+	}
+
+}
@@ -0,0 +1,190 @@
+package com.cerner.devcon.bank;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Optimistic balance reads, and a read/write mix against reads that take the
+ * writers' lock.
+ *
+ */
+public class OptimisticBankAccountTest {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(OptimisticBankAccountTest.class);
+
+	private static int taskCount = 1000000;
+	private static int threadCount = 4;
+	private static int readsPerWrite = 20;
+
+	private static ExecutorService executorService;
+
+	@BeforeClass
+	public static void init() throws Exception {
+		executorService = Executors.newFixedThreadPool(threadCount);
+	}
+
+	@AfterClass
+	public static void destroy() throws Exception {
+		executorService.shutdown();
+	}
+
+	@Test
+	public void testTransfer() {
+		OptimisticBankAccount from = new OptimisticBankAccount(1);
+		from.deposit(100);
+		OptimisticBankAccount to = new OptimisticBankAccount(2);
+
+		assertTrue(OptimisticBankAccount.transfer(from, 60, to));
+		assertFalse(OptimisticBankAccount.transfer(from, 60, to));
+		assertFalse(from.withdraw(41));
+		assertTrue(from.withdraw(40));
+		assertEquals(0, from.balance());
+		assertEquals(60, to.balance());
+		assertEquals(60, OptimisticBankAccount.totalBalance(from, to));
+	}
+
+	/**
+	 * Readers of the total never see a transfer half done.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testConsistentTotal() throws Exception {
+		final long startingBalance = 10 * taskCount;
+		final OptimisticBankAccount a = new OptimisticBankAccount(1);
+		a.deposit(startingBalance);
+		final OptimisticBankAccount b = new OptimisticBankAccount(2);
+		b.deposit(startingBalance);
+
+		run(new Workload() {
+			@Override
+			public void write(Random random) {
+				if (random.nextBoolean()) {
+					OptimisticBankAccount.transfer(a, 1, b);
+				} else {
+					OptimisticBankAccount.transfer(b, 1, a);
+				}
+			}
+
+			@Override
+			public long read(Random random) {
+				assertEquals(2 * startingBalance,
+						OptimisticBankAccount.totalBalance(a, b));
+				return 0;
+			}
+		});
+	}
+
+	/**
+	 * Twenty balance reads per transfer, with reads that lock against reads
+	 * that do not.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testReadWriteMix() throws Exception {
+		final long startingBalance = 10 * taskCount;
+
+		final BankAccount la = new BankAccount(1);
+		la.deposit(startingBalance);
+		final BankAccount lb = new BankAccount(2);
+		lb.deposit(startingBalance);
+		long locked = run(new Workload() {
+			@Override
+			public void write(Random random) {
+				if (random.nextBoolean()) {
+					OrderedLockTransfer.transfer(la, 1, lb);
+				} else {
+					OrderedLockTransfer.transfer(lb, 1, la);
+				}
+			}
+
+			@Override
+			public long read(Random random) {
+				BankAccount account = random.nextBoolean() ? la : lb;
+				account.lock.lock();
+				try {
+					return account.accountBalance;
+				} finally {
+					account.lock.unlock();
+				}
+			}
+		});
+
+		final OptimisticBankAccount oa = new OptimisticBankAccount(1);
+		oa.deposit(startingBalance);
+		final OptimisticBankAccount ob = new OptimisticBankAccount(2);
+		ob.deposit(startingBalance);
+		long optimistic = run(new Workload() {
+			@Override
+			public void write(Random random) {
+				if (random.nextBoolean()) {
+					OptimisticBankAccount.transfer(oa, 1, ob);
+				} else {
+					OptimisticBankAccount.transfer(ob, 1, oa);
+				}
+			}
+
+			@Override
+			public long read(Random random) {
+				return (random.nextBoolean() ? oa : ob).balance();
+			}
+		});
+
+		assertEquals(2 * startingBalance, oa.balance() + ob.balance());
+		log.info(String.format(
+				"%d:1 reads to writes, %d threads: locked reads %d ops/s, "
+						+ "optimistic reads %d ops/s", readsPerWrite,
+				threadCount, locked, optimistic));
+	}
+
+	/**
+	 * @return operations per second
+	 */
+	private long run(final Workload workload) throws Exception {
+		List<Callable<Long>> tasks = new ArrayList<Callable<Long>>();
+		for (int t = 0; t < threadCount; t++) {
+			tasks.add(new Callable<Long>() {
+				@Override
+				public Long call() {
+					Random random = new Random();
+					long sink = 0;
+					for (int i = 0; i < taskCount / threadCount; i++) {
+						if (i % (readsPerWrite + 1) == 0) {
+							workload.write(random);
+						} else {
+							sink += workload.read(random);
+						}
+					}
+					return sink;
+				}
+			});
+		}
+		long start = System.nanoTime();
+		for (java.util.concurrent.Future<Long> future : executorService
+				.invokeAll(tasks)) {
+			future.get();
+		}
+		return taskCount * 1000000000L / (System.nanoTime() - start);
+	}
+
+	private interface Workload {
+		void write(Random random);
+
+		long read(Random random);
+	}
+
+}
@@ -0,0 +1,316 @@
+package com.cerner.devcon.bank;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the opposing transfer workload from
+ * {@link BankAccountTest#testSimultaneousTransferSynch()} through the ordered
+ * lock engine with several threads, and compares it to the monitor path.
+ *
+ */
+public class OrderedLockTransferTest {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(OrderedLockTransferTest.class);
+
+	private static int taskCount = 100000;
+	private static int threadCount = 4;
+
+	private static ExecutorService executorService;
+
+	@BeforeClass
+	public static void init() throws Exception {
+		executorService = Executors.newFixedThreadPool(threadCount);
+	}
+
+	@AfterClass
+	public static void destroy() throws Exception {
+		executorService.shutdown();
+	}
+
+	/**
+	 * Same A to B / B to A traffic as the monitor test, but with several
+	 * threads. Finishes instead of deadlocking.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testSimultaneousTransferOrdered() throws Exception {
+		final long startingBalance = 10 * taskCount;
+		final BankAccount from = new BankAccount(1);
+		from.deposit(startingBalance);
+		final BankAccount to = new BankAccount(2);
+		to.deposit(startingBalance);
+
+		long[] result = runOpposing(new Transfer() {
+			@Override
+			public boolean transfer(BankAccount from, long amount,
+					BankAccount to) {
+				return OrderedLockTransfer.transfer(from, amount, to);
+			}
+		}, from, to, threadCount);
+
+		assertEquals(2 * taskCount, result[0]);
+		assertEquals(startingBalance, from.accountBalance);
+		assertEquals(startingBalance, to.accountBalance);
+	}
+
+	/**
+	 * Accounts sharing a number fall back to identity order.
+	 */
+	@Test
+	public void testSameAccountNumber() throws Exception {
+		final BankAccount from = new BankAccount(7);
+		from.deposit(100);
+		final BankAccount to = new BankAccount(7);
+
+		assertTrue(OrderedLockTransfer.transfer(from, 60, to));
+		assertFalse(OrderedLockTransfer.transfer(from, 60, to));
+		assertEquals(40, from.accountBalance);
+		assertEquals(60, to.accountBalance);
+		assertEquals(-OrderedLockTransfer.compare(from, to),
+				OrderedLockTransfer.compare(to, from));
+	}
+
+	/**
+	 * Batch with transfers on several account pairs, including a failing one.
+	 * Results come back in submission order.
+	 */
+	@Test
+	public void testTransferAll() {
+		BankAccount a = new BankAccount(1);
+		a.deposit(100);
+		BankAccount b = new BankAccount(2);
+		BankAccount c = new BankAccount(3);
+
+		List<OrderedLockTransfer.Transfer> batch = new ArrayList<OrderedLockTransfer.Transfer>();
+		batch.add(new OrderedLockTransfer.Transfer(a, 60, b));
+		batch.add(new OrderedLockTransfer.Transfer(c, 10, a));
+		batch.add(new OrderedLockTransfer.Transfer(b, 10, a));
+		batch.add(new OrderedLockTransfer.Transfer(a, 60, b));
+		batch.add(new OrderedLockTransfer.Transfer(a, 50, b));
+
+		boolean[] results = OrderedLockTransfer.transferAll(batch);
+
+		assertTrue(Arrays.equals(new boolean[] { true, false, true, false,
+				true }, results));
+		assertEquals(0, a.accountBalance);
+		assertEquals(100, b.accountBalance);
+		assertEquals(0, c.accountBalance);
+	}
+
+	/**
+	 * A transfer funded by an earlier one in the same batch, on a pair of
+	 * accounts that comes first in lock order, is applied after it.
+	 */
+	@Test
+	public void testTransferAllDependent() {
+		BankAccount a = new BankAccount(3);
+		a.deposit(100);
+		BankAccount b = new BankAccount(2);
+		BankAccount c = new BankAccount(1);
+
+		List<OrderedLockTransfer.Transfer> batch = new ArrayList<OrderedLockTransfer.Transfer>();
+		batch.add(new OrderedLockTransfer.Transfer(a, 100, b));
+		batch.add(new OrderedLockTransfer.Transfer(b, 70, c));
+		batch.add(new OrderedLockTransfer.Transfer(c, 20, a));
+
+		assertTrue(Arrays.equals(new boolean[] { true, true, true },
+				OrderedLockTransfer.transferAll(batch)));
+		assertEquals(20, a.accountBalance);
+		assertEquals(30, b.accountBalance);
+		assertEquals(50, c.accountBalance);
+	}
+
+	/**
+	 * A negative amount would credit from through BankAccount.withdraw; it is
+	 * refused, alone and in a batch, and leaves both balances alone.
+	 */
+	@Test
+	public void testNegativeAmount() {
+		BankAccount a = new BankAccount(1);
+		a.deposit(100);
+		BankAccount b = new BankAccount(2);
+		b.deposit(100);
+
+		assertFalse(OrderedLockTransfer.transfer(a, -10, b));
+		assertFalse(OrderedLockTransfer.transfer(b, -10, a));
+		List<OrderedLockTransfer.Transfer> batch = new ArrayList<OrderedLockTransfer.Transfer>();
+		batch.add(new OrderedLockTransfer.Transfer(a, -10, b));
+		batch.add(new OrderedLockTransfer.Transfer(b, -10, a));
+		assertTrue(Arrays.equals(new boolean[] { false, false },
+				OrderedLockTransfer.transferAll(batch)));
+		assertEquals(100, a.accountBalance);
+		assertEquals(100, b.accountBalance);
+	}
+
+	/**
+	 * The opposing workload submitted in batches from several threads,
+	 * against one call per transfer.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testTransferAllThroughput() throws Exception {
+		final long startingBalance = 10 * taskCount;
+		final BankAccount a = new BankAccount(1);
+		a.deposit(startingBalance);
+		final BankAccount b = new BankAccount(2);
+		b.deposit(startingBalance);
+		final int batchSize = 1000;
+
+		List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+		for (int t = 0; t < threadCount; t++) {
+			tasks.add(new Callable<Integer>() {
+				@Override
+				public Integer call() {
+					int done = 0;
+					List<OrderedLockTransfer.Transfer> batch = new ArrayList<OrderedLockTransfer.Transfer>(
+							2 * batchSize);
+					for (int i = 0; i < taskCount / threadCount / batchSize; i++) {
+						batch.clear();
+						for (int j = 0; j < batchSize; j++) {
+							batch.add(new OrderedLockTransfer.Transfer(a, 1, b));
+							batch.add(new OrderedLockTransfer.Transfer(b, 1, a));
+						}
+						for (boolean result : OrderedLockTransfer
+								.transferAll(batch)) {
+							if (result) {
+								done++;
+							}
+						}
+					}
+					return done;
+				}
+			});
+		}
+
+		long start = System.nanoTime();
+		int done = 0;
+		for (java.util.concurrent.Future<Integer> future : executorService
+				.invokeAll(tasks)) {
+			done += future.get();
+		}
+		long elapsed = System.nanoTime() - start;
+
+		assertEquals(2 * taskCount, done);
+		assertEquals(startingBalance, a.accountBalance);
+		assertEquals(startingBalance, b.accountBalance);
+		log.info(String.format("batched by %d, %d threads: %d txfrs/s",
+				batchSize, threadCount, done * TimeUnit.SECONDS.toNanos(1)
+						/ elapsed));
+	}
+
+	/**
+	 * Throughput and mean latency of the monitor path against the ordered
+	 * lock path. The monitor path is only run on a single thread, as it
+	 * deadlocks with more.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testThroughputComparison() throws Exception {
+		Transfer monitor = new Transfer() {
+			@Override
+			public boolean transfer(BankAccount from, long amount,
+					BankAccount to) {
+				return BankAccountTransfer.transfer(from, amount, to);
+			}
+		};
+		Transfer ordered = new Transfer() {
+			@Override
+			public boolean transfer(BankAccount from, long amount,
+					BankAccount to) {
+				return OrderedLockTransfer.transfer(from, amount, to);
+			}
+		};
+
+		report("monitor, 1 thread", monitor, 1);
+		report("ordered, 1 thread", ordered, 1);
+		report("ordered, " + threadCount + " threads", ordered, threadCount);
+	}
+
+	private void report(String name, Transfer transfer, int threads)
+			throws Exception {
+		final BankAccount a = new BankAccount(1);
+		a.deposit(10 * taskCount);
+		final BankAccount b = new BankAccount(2);
+		b.deposit(10 * taskCount);
+
+		long start = System.nanoTime();
+		long[] result = runOpposing(transfer, a, b, threads);
+		long elapsed = System.nanoTime() - start;
+
+		assertEquals(2 * taskCount, result[0]);
+		log.info(String.format(
+				"%s: %d txfrs/s, mean latency %d ns, max latency %d us", name,
+				result[0] * TimeUnit.SECONDS.toNanos(1) / elapsed, result[1]
+						/ result[0], TimeUnit.NANOSECONDS.toMicros(result[2])));
+	}
+
+	/**
+	 * Splits taskCount transfers in each direction over the given number of
+	 * threads.
+	 *
+	 * @return successful transfers, total latency in ns and max latency in ns
+	 */
+	private long[] runOpposing(final Transfer transfer, final BankAccount a,
+			final BankAccount b, int threads) throws Exception {
+		List<Callable<long[]>> tasks = new ArrayList<Callable<long[]>>();
+		for (int t = 0; t < threads; t++) {
+			final int perThread = taskCount / threads;
+			tasks.add(new Callable<long[]>() {
+				@Override
+				public long[] call() {
+					long[] stats = new long[3];
+					for (int i = 0; i < perThread; i++) {
+						timed(stats, transfer, a, b);
+						timed(stats, transfer, b, a);
+					}
+					return stats;
+				}
+			});
+		}
+
+		long[] total = new long[3];
+		for (java.util.concurrent.Future<long[]> future : executorService
+				.invokeAll(tasks)) {
+			long[] stats = future.get();
+			total[0] += stats[0];
+			total[1] += stats[1];
+			total[2] = Math.max(total[2], stats[2]);
+		}
+		return total;
+	}
+
+	private static void timed(long[] stats, Transfer transfer,
+			BankAccount from, BankAccount to) {
+		long start = System.nanoTime();
+		boolean done = transfer.transfer(from, 1, to);
+		long latency = System.nanoTime() - start;
+		if (done) {
+			stats[0]++;
+		}
+		stats[1] += latency;
+		stats[2] = Math.max(stats[2], latency);
+	}
+
+	private interface Transfer {
+		boolean transfer(BankAccount from, long amount, BankAccount to);
+	}
+
+}
@@ -0,0 +1,247 @@
+package com.cerner.devcon.bank;
+
+import static akka.dispatch.Futures.*;
+import static akka.pattern.Patterns.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import scala.concurrent.Await;
+import scala.concurrent.Future;
+import scala.concurrent.duration.Duration;
+import scala.concurrent.duration.FiniteDuration;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.testkit.JavaTestKit;
+import akka.util.Timeout;
+
+import com.cerner.devcon.actor.BankTransfer;
+import com.typesafe.config.ConfigFactory;
+
+/**
+ * The single writer engine on the two account transfer workload, next to the
+ * untyped actor transfer.
+ *
+ */
+public class RingBufferEngineTest {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(RingBufferEngineTest.class);
+
+	final FiniteDuration d = Duration.create(30, TimeUnit.SECONDS);
+	final Timeout t = Timeout.durationToTimeout(d);
+
+	private static int taskCount = 100000;
+	private static int actorTaskCount = 10000;
+	private static int threadCount = 4;
+
+	private static ExecutorService executorService;
+	static ActorSystem system;
+
+	@BeforeClass
+	public static void init() throws Exception {
+		executorService = Executors.newFixedThreadPool(threadCount);
+		system = ActorSystem.create();
+	}
+
+	@AfterClass
+	public static void destroy() throws Exception {
+		executorService.shutdown();
+		JavaTestKit.shutdownActorSystem(system);
+	}
+
+	@Test
+	public void testCommands() throws Exception {
+		RingBufferEngine engine = new RingBufferEngine(10, 4);
+		try {
+			assertTrue(engine.deposit(1, 100));
+			assertFalse(engine.withdraw(1, 101));
+			assertTrue(engine.transfer(1, 60, 2));
+			assertFalse(engine.transfer(1, 60, 2));
+			assertFalse(engine.deposit(1, -1));
+			assertEquals(40, engine.balance(1));
+			assertEquals(60, engine.balance(2));
+		} finally {
+			engine.close();
+		}
+	}
+
+	/**
+	 * Closing while producers publish into a full ring: every command that
+	 * was accepted is completed, the rest are refused, and no producer is
+	 * left waiting.
+	 */
+	@Test
+	public void testCloseWhilePublishing() throws Exception {
+		final RingBufferEngine engine = new RingBufferEngine(1, 4);
+		final AtomicInteger accepted = new AtomicInteger();
+		final AtomicInteger completed = new AtomicInteger();
+		final RingBufferEngine.Completion counter = new RingBufferEngine.Completion() {
+			@Override
+			public void complete(boolean success, long balance) {
+				completed.incrementAndGet();
+			}
+		};
+		Callable<Void> producer = new Callable<Void>() {
+			@Override
+			public Void call() {
+				try {
+					while (true) {
+						engine.deposit(0, 1, counter);
+						accepted.incrementAndGet();
+						// the blocking call returns once completed
+						assertTrue(engine.deposit(0, 1));
+					}
+				} catch (IllegalStateException e) {
+					return null; // closed
+				}
+			}
+		};
+		List<java.util.concurrent.Future<Void>> producers = new ArrayList<java.util.concurrent.Future<Void>>();
+		for (int i = 0; i < threadCount; i++) {
+			producers.add(executorService.submit(producer));
+		}
+		Thread.sleep(50);
+		engine.close();
+		for (java.util.concurrent.Future<Void> future : producers) {
+			future.get(10, TimeUnit.SECONDS);
+		}
+		assertTrue(accepted.get() > 0);
+		assertEquals(accepted.get(), completed.get());
+	}
+
+	@Test
+	public void testEngineFromConfig() throws Exception {
+		AccountEngine striped = AccountEngines.load();
+		assertTrue(striped instanceof StripedAccountRegistry);
+
+		AccountEngine ring = AccountEngines.create(ConfigFactory.parseString(
+				"devcon.bank.engine = ring-buffer").withFallback(
+				ConfigFactory.load()));
+		assertTrue(ring instanceof RingBufferEngine);
+		assertTrue(ring.deposit(0, 5));
+		assertEquals(5, ring.balance(0));
+		((RingBufferEngine) ring).close();
+	}
+
+	/**
+	 * Opposing transfers published without waiting, completions counted as
+	 * they come back.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testAsyncTransfers() throws Exception {
+		final long startingBalance = 10 * taskCount;
+		final RingBufferEngine engine = new RingBufferEngine(2);
+		engine.deposit(0, startingBalance);
+		engine.deposit(1, startingBalance);
+
+		final AtomicInteger done = new AtomicInteger();
+		final CountDownLatch latch = new CountDownLatch(2 * taskCount);
+		final RingBufferEngine.Completion completion = new RingBufferEngine.Completion() {
+			@Override
+			public void complete(boolean success, long balance) {
+				if (success) {
+					done.incrementAndGet();
+				}
+				latch.countDown();
+			}
+		};
+
+		long start = System.nanoTime();
+		for (java.util.concurrent.Future<Void> future : executorService
+				.invokeAll(Collections.nCopies(threadCount,
+						new Callable<Void>() {
+							@Override
+							public Void call() {
+								for (int i = 0; i < taskCount / threadCount; i++) {
+									engine.transfer(0, 1, 1, completion);
+									engine.transfer(1, 1, 0, completion);
+								}
+								return null;
+							}
+						}))) {
+			future.get();
+		}
+		assertTrue(latch.await(30, TimeUnit.SECONDS));
+		long elapsed = System.nanoTime() - start;
+
+		assertEquals(2 * taskCount, done.get());
+		assertEquals(startingBalance, engine.balance(0));
+		assertEquals(startingBalance, engine.balance(1));
+		log.info(String.format("ring buffer, async: %d txfrs/s", 2L
+				* taskCount * 1000000000L / elapsed));
+		engine.close();
+	}
+
+	/**
+	 * Blocking transfers through the engine against the untyped actor
+	 * transfer, both on two accounts.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testTwoAccountComparison() throws Exception {
+		final long startingBalance = 10 * taskCount;
+		final RingBufferEngine engine = new RingBufferEngine(2);
+		engine.deposit(0, startingBalance);
+		engine.deposit(1, startingBalance);
+
+		long start = System.nanoTime();
+		for (java.util.concurrent.Future<Void> future : executorService
+				.invokeAll(Collections.nCopies(threadCount,
+						new Callable<Void>() {
+							@Override
+							public Void call() {
+								for (int i = 0; i < taskCount / threadCount; i++) {
+									assertTrue(engine.transfer(0, 1, 1));
+									assertTrue(engine.transfer(1, 1, 0));
+								}
+								return null;
+							}
+						}))) {
+			future.get();
+		}
+		long ringRate = 2L * taskCount * 1000000000L
+				/ (System.nanoTime() - start);
+		assertEquals(startingBalance, engine.balance(0));
+		engine.close();
+
+		ActorRef a = system.actorOf(com.cerner.devcon.actor.BankAccount.props(
+				1, startingBalance));
+		ActorRef b = system.actorOf(com.cerner.devcon.actor.BankAccount.props(
+				2, startingBalance));
+		start = System.nanoTime();
+		List<Future<Object>> futures = new ArrayList<Future<Object>>();
+		for (int i = 0; i < actorTaskCount; i++) {
+			futures.add(ask(system.actorOf(Props.create(BankTransfer.class)),
+					new BankTransfer.Transfer(a, b, 1), t));
+			futures.add(ask(system.actorOf(Props.create(BankTransfer.class)),
+					new BankTransfer.Transfer(b, a, 1), t));
+		}
+		Await.result(sequence(futures, system.dispatcher()), d);
+		long actorRate = 2L * actorTaskCount * 1000000000L
+				/ (System.nanoTime() - start);
+
+		log.info(String.format(
+				"two accounts: ring buffer %d txfrs/s, actor %d txfrs/s",
+				ringRate, actorRate));
+	}
+
+}
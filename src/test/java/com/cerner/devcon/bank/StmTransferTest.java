@@ -0,0 +1,226 @@
+package com.cerner.devcon.bank;
+
+import static akka.dispatch.Futures.*;
+import static akka.pattern.Patterns.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import scala.concurrent.Await;
+import scala.concurrent.Future;
+import scala.concurrent.duration.Duration;
+import scala.concurrent.duration.FiniteDuration;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.testkit.JavaTestKit;
+import akka.util.Timeout;
+
+import com.cerner.devcon.actor.BankTransfer;
+
+/**
+ * Transfers through the STM, and a comparison with the ordered lock and
+ * actor engines under low contention (many accounts) and high contention
+ * (two accounts).
+ *
+ */
+public class StmTransferTest {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(StmTransferTest.class);
+
+	final FiniteDuration d = Duration.create(30, TimeUnit.SECONDS);
+	final Timeout t = Timeout.durationToTimeout(d);
+
+	private static int taskCount = 100000;
+	private static int actorTaskCount = 10000;
+	private static int threadCount = 4;
+	private static int lowContentionAccounts = 1000;
+	private static long startingBalance = 1000;
+
+	private static ExecutorService executorService;
+	static ActorSystem system;
+
+	@BeforeClass
+	public static void init() throws Exception {
+		executorService = Executors.newFixedThreadPool(threadCount + 1);
+		system = ActorSystem.create();
+	}
+
+	@AfterClass
+	public static void destroy() throws Exception {
+		executorService.shutdown();
+		JavaTestKit.shutdownActorSystem(system);
+	}
+
+	@Test
+	public void testTransfer() {
+		TransactionalBankAccount from = new TransactionalBankAccount(1, 100);
+		TransactionalBankAccount to = new TransactionalBankAccount(2, 0);
+
+		assertTrue(StmTransfer.transfer(from, 60, to));
+		assertFalse(StmTransfer.transfer(from, 60, to));
+		assertFalse(from.withdraw(-1));
+		assertEquals(40, from.balance());
+		assertEquals(60, to.balance());
+		assertEquals(100, StmTransfer.totalBalance(from, to));
+	}
+
+	/**
+	 * Opposing transfers on several threads while an auditor keeps reading
+	 * the total. Every audit must see the same total.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testSimultaneousTransferWithAudit() throws Exception {
+		// big enough to cover the txfrs in either direction
+		final long startingBalance = 10 * taskCount;
+		final TransactionalBankAccount a = new TransactionalBankAccount(1,
+				startingBalance);
+		final TransactionalBankAccount b = new TransactionalBankAccount(2,
+				startingBalance);
+		final AtomicBoolean running = new AtomicBoolean(true);
+
+		java.util.concurrent.Future<Integer> audits = executorService
+				.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() {
+						int count = 0;
+						while (running.get()) {
+							assertEquals(2 * startingBalance,
+									StmTransfer.totalBalance(a, b));
+							count++;
+						}
+						return count;
+					}
+				});
+
+		List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+		for (int i = 0; i < threadCount; i++) {
+			final boolean forward = i % 2 == 0;
+			tasks.add(new Callable<Integer>() {
+				@Override
+				public Integer call() {
+					int done = 0;
+					for (int i = 0; i < taskCount / threadCount; i++) {
+						if (forward ? StmTransfer.transfer(a, 1, b)
+								: StmTransfer.transfer(b, 1, a)) {
+							done++;
+						}
+					}
+					return done;
+				}
+			});
+		}
+		int done = 0;
+		for (java.util.concurrent.Future<Integer> future : executorService
+				.invokeAll(tasks)) {
+			done += future.get();
+		}
+		running.set(false);
+
+		assertEquals(taskCount, done);
+		assertEquals(2 * startingBalance, a.balance() + b.balance());
+		log.info(audits.get() + " consistent audits during transfers");
+	}
+
+	/**
+	 * Throughput of each engine with random transfers over many accounts and
+	 * with all transfers on two accounts.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testContentionComparison() throws Exception {
+		for (int accounts : new int[] { lowContentionAccounts, 2 }) {
+			String contention = accounts == 2 ? "high" : "low";
+
+			final TransactionalBankAccount[] stm = new TransactionalBankAccount[accounts];
+			final BankAccount[] locked = new BankAccount[accounts];
+			final ActorRef[] actors = new ActorRef[accounts];
+			for (int i = 0; i < accounts; i++) {
+				stm[i] = new TransactionalBankAccount(i, startingBalance);
+				locked[i] = new BankAccount(i);
+				locked[i].deposit(startingBalance);
+				actors[i] = system.actorOf(com.cerner.devcon.actor.BankAccount
+						.props(i, startingBalance));
+			}
+
+			report("stm, " + contention, taskCount, new Engine() {
+				@Override
+				public void transfer(int from, int to) {
+					StmTransfer.transfer(stm[from], 1, stm[to]);
+				}
+			}, accounts);
+			report("ordered lock, " + contention, taskCount, new Engine() {
+				@Override
+				public void transfer(int from, int to) {
+					OrderedLockTransfer.transfer(locked[from], 1, locked[to]);
+				}
+			}, accounts);
+
+			long start = System.nanoTime();
+			Random random = new Random();
+			List<Future<Object>> futures = new ArrayList<Future<Object>>();
+			for (int i = 0; i < actorTaskCount; i++) {
+				int from = random.nextInt(accounts);
+				int to = (from + 1 + random.nextInt(accounts - 1)) % accounts;
+				ActorRef txfr = system.actorOf(Props
+						.create(BankTransfer.class));
+				futures.add(ask(txfr, new BankTransfer.Transfer(actors[from],
+						actors[to], 1), t));
+			}
+			Await.result(sequence(futures, system.dispatcher()), d);
+			log.info(String.format("actor, %s: %d txfrs/s", contention,
+					actorTaskCount * 1000000000L / (System.nanoTime() - start)));
+
+			assertEquals(accounts * startingBalance,
+					StmTransfer.totalBalance(stm));
+		}
+	}
+
+	private void report(String name, int count, final Engine engine,
+			final int accounts) throws Exception {
+		final int perThread = count / threadCount;
+		Callable<Void> task = new Callable<Void>() {
+			@Override
+			public Void call() {
+				Random random = new Random();
+				for (int i = 0; i < perThread; i++) {
+					int from = random.nextInt(accounts);
+					int to = (from + 1 + random.nextInt(accounts - 1))
+							% accounts;
+					engine.transfer(from, to);
+				}
+				return null;
+			}
+		};
+		long start = System.nanoTime();
+		for (java.util.concurrent.Future<Void> future : executorService
+				.invokeAll(Collections.nCopies(threadCount, task))) {
+			future.get();
+		}
+		log.info(String.format("%s: %d txfrs/s", name, count * 1000000000L
+				/ (System.nanoTime() - start)));
+	}
+
+	private interface Engine {
+		void transfer(int from, int to);
+	}
+
+}
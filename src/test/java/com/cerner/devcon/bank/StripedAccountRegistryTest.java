@@ -0,0 +1,131 @@
+package com.cerner.devcon.bank;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Random transfers between many accounts in the striped registry, with
+ * uniform and skewed account access.
+ *
+ */
+public class StripedAccountRegistryTest {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(StripedAccountRegistryTest.class);
+
+	private static int accountCount = 1000000;
+	private static int hotAccounts = 100;
+	private static int taskCount = 1000000;
+	private static int threadCount = 4;
+	private static long startingBalance = 100;
+
+	private static ExecutorService executorService;
+
+	@BeforeClass
+	public static void init() throws Exception {
+		executorService = Executors.newFixedThreadPool(threadCount);
+	}
+
+	@AfterClass
+	public static void destroy() throws Exception {
+		executorService.shutdown();
+	}
+
+	@Test
+	public void testDepositWithdraw() {
+		StripedAccountRegistry registry = new StripedAccountRegistry(10, 3);
+		assertEquals(4, registry.stripeCount());
+		assertTrue(registry.deposit(3, 100));
+		assertFalse(registry.withdraw(3, 101));
+		assertTrue(registry.transfer(3, 60, 9));
+		assertFalse(registry.transfer(3, 60, 9));
+		assertEquals(40, registry.balance(3));
+		assertEquals(60, registry.balance(9));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownAccount() {
+		new StripedAccountRegistry(10).deposit(10, 1);
+	}
+
+	/**
+	 * Every account is equally likely to be picked.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testUniformTransfers() throws Exception {
+		runTransfers("uniform", 0);
+	}
+
+	/**
+	 * Nine out of ten picks go to a small set of hot accounts.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testSkewedTransfers() throws Exception {
+		runTransfers("skewed", 0.9);
+	}
+
+	private void runTransfers(String name, final double hotRatio)
+			throws Exception {
+		final StripedAccountRegistry registry = new StripedAccountRegistry(
+				accountCount);
+		for (int i = 0; i < accountCount; i++) {
+			registry.deposit(i, startingBalance);
+		}
+
+		Callable<Integer> task = new Callable<Integer>() {
+			@Override
+			public Integer call() {
+				Random random = new Random();
+				int done = 0;
+				for (int i = 0; i < taskCount / threadCount; i++) {
+					int from = pick(random, hotRatio);
+					int to = pick(random, hotRatio);
+					if (registry.transfer(from, 1 + random.nextInt(10), to)) {
+						done++;
+					}
+				}
+				return done;
+			}
+		};
+
+		long start = System.nanoTime();
+		int done = 0;
+		for (java.util.concurrent.Future<Integer> future : executorService
+				.invokeAll(Collections.nCopies(threadCount, task))) {
+			done += future.get();
+		}
+		long elapsed = System.nanoTime() - start;
+
+		// money only moves between accounts, so the total is unchanged
+		long total = 0;
+		for (int i = 0; i < accountCount; i++) {
+			total += registry.balance(i);
+		}
+		assertEquals(accountCount * startingBalance, total);
+		log.info(String.format("%s: %d txfrs/s, %d of %d succeeded", name,
+				taskCount * 1000000000L / elapsed, done, taskCount));
+	}
+
+	private static int pick(Random random, double hotRatio) {
+		if (random.nextDouble() < hotRatio) {
+			return random.nextInt(hotAccounts);
+		}
+		return random.nextInt(accountCount);
+	}
+
+}
@@ -0,0 +1,97 @@
+package com.cerner.devcon.client;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import scala.concurrent.duration.Duration;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.actor.TypedActor;
+import akka.actor.UntypedActor;
+import akka.pattern.AskTimeoutException;
+import akka.testkit.JavaTestKit;
+import akka.util.Timeout;
+
+import com.cerner.devcon.actor.BankAccount;
+import com.cerner.devcon.actor.ReplyAggregator;
+import com.cerner.devcon.typed.BankAccountTypedActor;
+
+/**
+ * Tests the Java clients over the actor and typed account engines.
+ */
+public class AccountClientTest {
+
+	final Timeout t = Timeout.durationToTimeout(Duration.create(10,
+			TimeUnit.SECONDS));
+
+	static ActorSystem system;
+
+	static ActorRef aggregator;
+
+	@BeforeClass
+	public static void setup() {
+		system = ActorSystem.create();
+		aggregator = system.actorOf(ReplyAggregator.props());
+	}
+
+	@AfterClass
+	public static void teardown() {
+		JavaTestKit.shutdownActorSystem(system);
+	}
+
+	/**
+	 * An account that never answers.
+	 */
+	public static class StalledAccount extends UntypedActor {
+		public void onReceive(Object msg) {
+		}
+	}
+
+	@Test
+	public void testActorClient() throws Exception {
+		check(new ActorAccountClient(aggregator,
+				system.actorOf(BankAccount.props(1, 10)), t));
+	}
+
+	@Test
+	public void testTypedClient() throws Exception {
+		com.cerner.devcon.typed.BankAccount account = TypedActor.get(system)
+				.typedActorOf(BankAccountTypedActor.props(1, 10));
+		check(new TypedAccountClient(account));
+	}
+
+	private void check(AccountClient client) throws Exception {
+		assertTrue(client.deposit(5).get());
+		assertFalse(client.withdraw(16).get());
+		assertTrue(client.withdraw(15).get());
+		assertEquals(Long.valueOf(0), client.balance().get());
+
+		BlockingAccountClient blocking = new BlockingAccountClient(client, 10,
+				TimeUnit.SECONDS);
+		assertTrue(blocking.deposit(7));
+		assertFalse(blocking.withdraw(8));
+		assertEquals(7, blocking.balance());
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		ActorAccountClient client = new ActorAccountClient(aggregator,
+				system.actorOf(Props.create(StalledAccount.class)),
+				Timeout.durationToTimeout(Duration.create(100,
+						TimeUnit.MILLISECONDS)));
+		try {
+			new BlockingAccountClient(client, 10, TimeUnit.SECONDS).deposit(1);
+			fail("expected a timeout");
+		} catch (TimeoutException e) {
+			assertTrue(e instanceof AskTimeoutException);
+		}
+	}
+
+}
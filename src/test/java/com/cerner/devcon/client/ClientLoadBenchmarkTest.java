@@ -0,0 +1,164 @@
+package com.cerner.devcon.client;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import scala.concurrent.Await;
+import scala.concurrent.duration.Duration;
+import scala.concurrent.duration.FiniteDuration;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.TypedActor;
+import akka.testkit.JavaTestKit;
+import akka.util.Timeout;
+
+import com.cerner.devcon.actor.BankAccount;
+import com.cerner.devcon.actor.ReplyAggregator;
+import com.cerner.devcon.typed.BankAccountTypedActor;
+
+/**
+ * Load driver: many simulated clients, each making blocking deposits in turn.
+ *
+ * Compares the pattern of the other tests, a fixed ExecutorService whose
+ * threads Await each Scala future, with a thread per client from
+ * {@link ClientThreads} calling a {@link BlockingAccountClient}. With virtual
+ * threads every client runs at once; the fixed pool only runs as many as it
+ * has threads.
+ *
+ * The load is set with -Ddevcon.load.clients and -Ddevcon.load.ops (per
+ * client). A million clients needs a JDK with virtual threads; without them
+ * the clients are capped at MAX_PLATFORM_CLIENTS.
+ */
+public class ClientLoadBenchmarkTest {
+
+	private static final Logger log = LoggerFactory
+			.getLogger(ClientLoadBenchmarkTest.class);
+
+	/**
+	 * Most clients run when each needs a platform thread
+	 */
+	private static final int MAX_PLATFORM_CLIENTS = 5000;
+
+	private static final int clients = clients();
+
+	private static final int ops = Integer.getInteger("devcon.load.ops", 20);
+
+	final FiniteDuration d = Duration.create(30, TimeUnit.SECONDS);
+	final Timeout t = Timeout.durationToTimeout(d);
+
+	static ActorSystem system;
+
+	@BeforeClass
+	public static void setup() {
+		system = ActorSystem.create();
+	}
+
+	@AfterClass
+	public static void teardown() {
+		JavaTestKit.shutdownActorSystem(system);
+	}
+
+	@Test
+	public void testClientLoad() throws Exception {
+		log.info(String.format("%d clients of %d deposits, virtual threads %s",
+				clients, ops, ClientThreads.hasVirtualThreads()));
+
+		// the pattern of the other tests
+		final com.cerner.devcon.typed.BankAccount typed = typedAccount();
+		ExecutorService pool = Executors.newFixedThreadPool(Runtime
+				.getRuntime().availableProcessors());
+		run("executor + Await", pool, new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				for (int i = 0; i < ops; i++) {
+					assertTrue(Await.result(typed.deposit(1), d));
+				}
+				return null;
+			}
+		});
+		assertEquals((long) clients * ops, Await.result(typed.balance(), d)
+				.longValue());
+
+		final BlockingAccountClient typedClient = new BlockingAccountClient(
+				new TypedAccountClient(typedAccount()), d.toMillis(),
+				TimeUnit.MILLISECONDS);
+		run("thread per client + blocking typed client",
+				ClientThreads.newThreadPerTaskExecutor(), deposits(typedClient));
+		assertEquals((long) clients * ops, typedClient.balance());
+
+		ActorRef aggregator = system.actorOf(ReplyAggregator.props());
+		final BlockingAccountClient actorClient = new BlockingAccountClient(
+				new ActorAccountClient(aggregator,
+						system.actorOf(BankAccount.props(1, 0)), t),
+				d.toMillis(), TimeUnit.MILLISECONDS);
+		run("thread per client + blocking actor client",
+				ClientThreads.newThreadPerTaskExecutor(), deposits(actorClient));
+		assertEquals((long) clients * ops, actorClient.balance());
+	}
+
+	private static int clients() {
+		int clients = Integer.getInteger("devcon.load.clients", 1000);
+		if (clients > MAX_PLATFORM_CLIENTS && !ClientThreads.hasVirtualThreads()) {
+			log.warn(String.format(
+					"no virtual threads, running %d clients instead of %d",
+					MAX_PLATFORM_CLIENTS, clients));
+			return MAX_PLATFORM_CLIENTS;
+		}
+		return clients;
+	}
+
+	private com.cerner.devcon.typed.BankAccount typedAccount() {
+		return TypedActor.get(system).typedActorOf(
+				BankAccountTypedActor.props(1, 0));
+	}
+
+	private Callable<Void> deposits(final BlockingAccountClient client) {
+		return new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				for (int i = 0; i < ops; i++) {
+					assertTrue(client.deposit(1));
+				}
+				return null;
+			}
+		};
+	}
+
+	/**
+	 * Run the client task clients times on the executor and wait for all.
+	 */
+	private void run(String name, ExecutorService executor,
+			Callable<Void> client) throws Exception {
+		long start = System.nanoTime();
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>(clients);
+			for (int i = 0; i < clients; i++) {
+				futures.add(executor.submit(client));
+			}
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		long nanos = System.nanoTime() - start;
+		long total = (long) clients * ops;
+		log.info(String.format("%s: %d deposits in %d ms, %.0f/s", name,
+				total, TimeUnit.NANOSECONDS.toMillis(nanos), total * 1e9
+						/ nanos));
+	}
+
+}
@@ -4,6 +4,7 @@ import static akka.dispatch.Futures.*;
 import static org.junit.Assert.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Callable;
@@ -24,11 +25,14 @@ import scala.concurrent.Future;
 import scala.concurrent.duration.Duration;
 import scala.concurrent.duration.FiniteDuration;
 import akka.actor.ActorSystem;
+import akka.actor.Props;
 import akka.actor.TypedActor;
 import akka.actor.TypedProps;
 import akka.dispatch.Futures;
 import akka.util.Timeout;
 
+import com.cerner.devcon.Allocations;
+
 /**
  * Typed Actor test to demonstrate safely handling concurrent state
  * modification.
@@ -81,7 +85,7 @@ public class TypedActorBankAccountTest {
 		// ActorRef
 		final BankAccount account = TypedActor.get(system).typedActorOf(
 				BankAccountTypedActor.props(1, 0));
-		final double depositAmt = 100;
+		final long depositAmt = 100;
 
 		Callable<Boolean> task = new Callable<Boolean>() {
 			@Override
@@ -107,11 +111,143 @@ public class TypedActorBankAccountTest {
 			assertTrue(result);
 		}
 		assertEquals(taskCount * depositAmt,
-				Await.result(account.balance(), d), 1);
+				Await.result(account.balance(), d).longValue());
 
 		log.info("finished deposits");
 	}
 
+	/**
+	 * The same deposits as testSimultaneousDeposit, sent as a few bulk calls
+	 * instead of one call and future each.
+	 */
+	@Test
+	public void testBulkDeposit() throws Exception {
+		final BankAccount account = TypedActor.get(system).typedActorOf(
+				BankAccountTypedActor.props(1, 0));
+		final long depositAmt = 100;
+		final int bulkSize = 1000;
+
+		long start = System.nanoTime();
+		List<Future<boolean[]>> futures = new ArrayList<Future<boolean[]>>();
+		for (int i = 0; i < taskCount; i += bulkSize) {
+			long[] amounts = new long[Math.min(bulkSize, taskCount - i)];
+			Arrays.fill(amounts, depositAmt);
+			futures.add(account.depositAll(amounts));
+		}
+		int count = 0;
+		for (boolean[] results : awaitAll(futures)) {
+			for (boolean result : results) {
+				assertTrue(result);
+				count++;
+			}
+		}
+		long nanos = System.nanoTime() - start;
+		log.info(String.format("%d deposits in %d calls, %d ms, %.0f/s",
+				count, futures.size(), TimeUnit.NANOSECONDS.toMillis(nanos),
+				count * 1e9 / nanos));
+
+		assertEquals(taskCount, count);
+		assertEquals(taskCount * depositAmt,
+				Await.result(account.balance(), d).longValue());
+	}
+
+	/**
+	 * A negative withdraw would credit the account; it is refused, and so is
+	 * a transfer of a negative amount in either mode.
+	 */
+	@Test
+	public void testNegativeWithdraw() throws Exception {
+		final BankAccount from = TypedActor.get(system).typedActorOf(
+				BankAccountTypedActor.props(1, 10));
+		final BankAccount to = TypedActor.get(system).typedActorOf(
+				BankAccountTypedActor.props(2, 10));
+		assertFalse(Await.result(from.withdraw(-5), d));
+		assertFalse(Await.result(BankTransferService.create(system)
+				.transfer(from, -5, to), d));
+		assertFalse(Await.result(BankTransferService.createOneWay(system)
+				.transfer(from, -5, to), d));
+		assertEquals(10, Await.result(from.balance(), d).longValue());
+		assertEquals(10, Await.result(to.balance(), d).longValue());
+	}
+
+	@Test
+	public void testApplyAll() throws Exception {
+		final BankAccount account = TypedActor.get(system).typedActorOf(
+				BankAccountTypedActor.props(1, 0));
+		// the last entry is a negative withdraw, refused like a short one
+		boolean[] done = Await.result(account.applyAll(new boolean[] { true,
+				false, true, true, false, true }, new long[] { 5, 10, 4, 7, -1,
+				-3 }), d);
+		assertEquals("[false, true, true, false, false, false]",
+				Arrays.toString(done));
+		assertEquals(6, Await.result(account.balance(), d).longValue());
+	}
+
+	/**
+	 * The same deposits through the TypedActor proxy and through a stub.
+	 */
+	@Test
+	public void testStubDeposit() throws Exception {
+		final long depositAmt = 100;
+		for (int run = 0; run < 2; run++) {
+			boolean stub = run == 1;
+			BankAccount account;
+			if (stub) {
+				account = new BankAccountStub(system.actorOf(BankAccountSkeleton
+						.props(1, 0)), t);
+			} else {
+				account = TypedActor.get(system).typedActorOf(
+						BankAccountTypedActor.props(1, 0));
+			}
+
+			long start = System.nanoTime();
+			List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+			for (int i = 0; i < taskCount; i++) {
+				futures.add(account.deposit(depositAmt));
+			}
+			for (Boolean result : awaitAll(futures)) {
+				assertTrue(result);
+			}
+			long nanos = System.nanoTime() - start;
+			log.info(String.format("%s: %d deposits in %d ms, %.0f/s",
+					stub ? "stub" : "proxy", taskCount,
+					TimeUnit.NANOSECONDS.toMillis(nanos), taskCount * 1e9
+							/ nanos));
+
+			assertEquals(taskCount * depositAmt,
+					Await.result(account.balance(), d).longValue());
+		}
+	}
+
+	@Test
+	public void testStubTransfer() throws Exception {
+		final int transfers = 1000;
+		// withdraws may all run before the deposits, so cover every one
+		final long startingBalance = transfers;
+		BankAccount from = new BankAccountStub(
+				system.actorOf(BankAccountSkeleton.props(1, startingBalance)), t);
+		BankAccount to = new BankAccountStub(system.actorOf(BankAccountSkeleton
+				.props(2, startingBalance)), t);
+		BankAccountTransfer txfr = new BankAccountTransferStub(
+				system.actorOf(Props.create(BankAccountTransferSkeleton.class)),
+				t);
+
+		List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+		for (int i = 0; i < transfers; i++) {
+			futures.add(txfr.transfer(from, 1, to));
+			futures.add(txfr.transfer(to, 1, from));
+		}
+		for (Boolean result : awaitAll(futures)) {
+			assertTrue(result);
+		}
+		assertFalse(Await.result(
+				txfr.transfer(from, startingBalance + 1, to), d));
+		assertEquals(startingBalance, Await.result(from.balance(), d)
+				.longValue());
+		assertEquals(startingBalance, Await.result(to.balance(), d)
+				.longValue());
+	}
+
 	/**
 	 * Test simultaneous transfers between 2 actors. Threads simulate clients
 	 * and tasks are divided between them.
@@ -122,7 +258,7 @@ public class TypedActorBankAccountTest {
 	public void testSimultaneousTransferActor() throws Exception {
 
 		log.info("started transfers");
-		final double startingBalance = 10 * taskCount;
+		final long startingBalance = 10 * taskCount;
 
 		// Create 2 TypedActors
 		// A dynamic proxy is returned that wraps the interaction with the
@@ -133,7 +269,7 @@ public class TypedActorBankAccountTest {
 		final BankAccount to = TypedActor.get(system).typedActorOf(
 				BankAccountTypedActor.props(2, 0));
 		to.deposit(startingBalance);
-		final double transferAmt = 1;
+		final long transferAmt = 1;
 
 		Callable<Boolean> task = new Callable<Boolean>() {
 			@Override
@@ -174,13 +310,113 @@ public class TypedActorBankAccountTest {
 		for (Boolean result : results) {
 			assertTrue(result);
 		}
-		assertEquals(startingBalance, Await.result(from.balance(), d), .5);
-		assertEquals(startingBalance, Await.result(to.balance(), d), .5);
+		assertEquals(startingBalance, Await.result(from.balance(), d)
+				.longValue());
+		assertEquals(startingBalance, Await.result(to.balance(), d)
+				.longValue());
 
 		log.info("finished transfers");
 
 	}
 
+	/**
+	 * The deposits of testSimultaneousDeposit sent one way, with a single
+	 * acknowledgement at the end, through the proxy and through a stub.
+	 */
+	@Test
+	public void testOneWayDeposit() throws Exception {
+		final long depositAmt = 100;
+		for (int run = 0; run < 2; run++) {
+			boolean stub = run == 1;
+			BankAccount account;
+			if (stub) {
+				account = new BankAccountStub(system.actorOf(BankAccountSkeleton
+						.props(1, 0)), t);
+			} else {
+				account = TypedActor.get(system).typedActorOf(
+						BankAccountTypedActor.props(1, 0));
+			}
+
+			long start = System.nanoTime();
+			for (int i = 0; i < taskCount; i++) {
+				account.depositAsync(depositAmt);
+			}
+			account.withdrawAsync(taskCount * depositAmt + 1);
+			account.withdrawAsync(-1);
+			BankAccount.Acknowledgement ack = Await.result(
+					account.acknowledge(), d);
+			long nanos = System.nanoTime() - start;
+			log.info(String.format("one way %s: %d deposits in %d ms, %.0f/s",
+					stub ? "stub" : "proxy", taskCount,
+					TimeUnit.NANOSECONDS.toMillis(nanos), taskCount * 1e9
+							/ nanos));
+
+			assertEquals(taskCount, ack.getDone());
+			assertEquals(2, ack.getFailed());
+			assertEquals(taskCount * depositAmt,
+					Await.result(account.balance(), d).longValue());
+		}
+	}
+
+	/**
+	 * Transfers through a typed actor per transfer, as in
+	 * testSimultaneousTransferActor, through one shared BankTransferService,
+	 * and through a service sending the deposits one way. The bytes per
+	 * transfer count every thread and are indicative only, see
+	 * {@link Allocations}.
+	 */
+	@Test
+	public void testTransferService() throws Exception {
+		final int transfers = taskCount / 5;
+		final long startingBalance = transfers;
+		String[] modes = { "actor per transfer", "service", "one way service" };
+		BankTransferService[] services = { null,
+				BankTransferService.create(system),
+				BankTransferService.createOneWay(system) };
+
+		for (int run = 0; run < modes.length; run++) {
+			BankTransferService service = services[run];
+			BankAccount from = TypedActor.get(system).typedActorOf(
+					BankAccountTypedActor.props(1, startingBalance));
+			BankAccount to = TypedActor.get(system).typedActorOf(
+					BankAccountTypedActor.props(2, startingBalance));
+
+			long start = System.nanoTime();
+			long before = Allocations.allocatedBytes();
+			List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+			for (int i = 0; i < transfers; i++) {
+				BankAccountTransfer txfr = service;
+				BankAccountTransfer txfr2 = service;
+				if (service == null) {
+					txfr = TypedActor.get(system).typedActorOf(
+							new TypedProps<BankTransferTypedActor>(
+									BankAccountTransfer.class,
+									BankTransferTypedActor.class));
+					txfr2 = TypedActor.get(system).typedActorOf(
+							new TypedProps<BankTransferTypedActor>(
+									BankAccountTransfer.class,
+									BankTransferTypedActor.class));
+				}
+				futures.add(txfr.transfer(from, 1, to));
+				futures.add(txfr2.transfer(to, 1, from));
+			}
+			for (Boolean result : awaitAll(futures)) {
+				assertTrue(result);
+			}
+			long allocated = Allocations.allocatedBytes() - before;
+			long nanos = System.nanoTime() - start;
+			log.info(String.format(
+					"%s: %d transfers in %d ms, %.0f/s, %d bytes/transfer",
+					modes[run], futures.size(), TimeUnit.NANOSECONDS.toMillis(nanos),
+					futures.size() * 1e9 / nanos, allocated / futures.size()));
+
+			assertEquals(startingBalance, Await.result(from.balance(), d)
+					.longValue());
+			assertEquals(startingBalance, Await.result(to.balance(), d)
+					.longValue());
+		}
+	}
+
 	private <T> Iterable<T> awaitAll(List<Future<T>> futures) {
 		final ExecutionContext ec = system.dispatcher();
 		try {